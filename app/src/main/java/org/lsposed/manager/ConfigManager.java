@@ -29,6 +29,7 @@ import android.util.Log;
 
 import org.lsposed.lspd.ILSPManagerService;
 import org.lsposed.lspd.models.Application;
+import org.lsposed.lspd.models.HookMetric;
 import org.lsposed.lspd.models.UserInfo;
 import org.lsposed.manager.adapters.ScopeAdapter;
 import org.lsposed.manager.receivers.LSPManagerServiceHolder;
@@ -36,6 +37,7 @@ import org.lsposed.manager.receivers.LSPManagerServiceHolder;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -197,6 +199,34 @@ public class ConfigManager {
         }
     }
 
+    public static boolean isHookMetricsEnabled() {
+        try {
+            return LSPManagerServiceHolder.getService().isHookMetricsEnabled();
+        } catch (RemoteException e) {
+            Log.e(App.TAG, Log.getStackTraceString(e));
+            return false;
+        }
+    }
+
+    public static boolean setHookMetricsEnabled(boolean enabled) {
+        try {
+            LSPManagerServiceHolder.getService().setHookMetricsEnabled(enabled);
+            return true;
+        } catch (RemoteException e) {
+            Log.e(App.TAG, Log.getStackTraceString(e));
+            return false;
+        }
+    }
+
+    public static List<HookMetric> getHookMetrics() {
+        try {
+            return LSPManagerServiceHolder.getService().getHookMetrics();
+        } catch (RemoteException e) {
+            Log.e(App.TAG, Log.getStackTraceString(e));
+            return Collections.emptyList();
+        }
+    }
+
     public static ParcelFileDescriptor getLog(boolean verbose) {
         try {
             return verbose ? LSPManagerServiceHolder.getService().getVerboseLog() : LSPManagerServiceHolder.getService().getModulesLog();
@@ -0,0 +1,67 @@
+/*
+ * This file is part of LSPosed.
+ *
+ * LSPosed is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSPosed is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSPosed.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2021 - 2022 LSPosed Contributors
+ */
+
+// Runs the Java side of the hook pipeline of :core on a plain JVM. The framework classes come
+// from Robolectric's android-all jar, while HookBridge and android.util.Log are replaced by the
+// host stand-ins in src/jmh/java, which is why the stand-ins are excluded from the core classes.
+
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+val verCode: Int by rootProject.extra
+
+evaluationDependsOn(":core")
+
+val coreProject = project(":core")
+val coreClasses = coreProject.tasks.named<JavaCompile>("compileDebugJavaWithJavac")
+val coreRuntimeClasspath = coreProject.configurations.named("debugRuntimeClasspath").map {
+    it.incoming.artifactView {
+        attributes {
+            attribute(Attribute.of("artifactType", String::class.java), "android-classes-jar")
+        }
+    }.files
+}
+
+dependencies {
+    jmhImplementation(files(coreClasses.map { task ->
+        task.destinationDirectory.asFileTree.matching {
+            exclude("org/lsposed/lspd/nativebridge/HookBridge.class")
+        }
+    }).builtBy(coreClasses))
+    jmhImplementation(files(coreRuntimeClasspath))
+    jmhImplementation(libs.robolectric.android.all)
+    jmhCompileOnly(libs.androidx.annotation)
+    // only for xposed.dummy.XResourcesSuperClass, android.* is taken from android-all
+    jmhRuntimeOnly(files(project(":hiddenapi:stubs").tasks.named<Jar>("jar").map { jar ->
+        zipTree(jar.archiveFile).matching { include("xposed/dummy/**") }
+    }))
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    duplicateClassesStrategy.set(DuplicatesStrategy.EXCLUDE)
+    resultFormat.set("JSON")
+    // one file per commit, kept out of the build directory to compare against older runs
+    resultsFile.set(layout.projectDirectory.file("results/$verCode.json"))
+}
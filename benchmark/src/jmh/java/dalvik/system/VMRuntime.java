@@ -0,0 +1,26 @@
+package dalvik.system;
+
+import java.lang.reflect.Array;
+
+/**
+ * Host stand-in for the parts of the ART runtime used by framework collections such as
+ * {@code android.util.SparseArray}, whose android-all implementation is native.
+ */
+public final class VMRuntime {
+    private static final VMRuntime THE_ONE = new VMRuntime();
+
+    private VMRuntime() {
+    }
+
+    public static VMRuntime getRuntime() {
+        return THE_ONE;
+    }
+
+    public Object newUnpaddedArray(Class<?> componentType, int minLength) {
+        return Array.newInstance(componentType, minLength);
+    }
+
+    public Object newNonMovableArray(Class<?> componentType, int length) {
+        return Array.newInstance(componentType, length);
+    }
+}
@@ -0,0 +1,96 @@
+package org.lsposed.lspd.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import de.robv.android.xposed.XposedHelpers;
+
+/**
+ * Reads and writes of additional instance fields over a working set of objects shared by all
+ * threads, single threaded and with 8 threads contending for the same objects.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AdditionalFieldBenchmark {
+    private static final int OBJECTS = 1024;
+    private static final String KEY = "benchmark";
+
+    private final Object[] objects = new Object[OBJECTS];
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        @Setup
+        public void setUp() {
+            // threads start apart so that they don't walk the objects in lock step
+            next = ThreadLocalRandom.current().nextInt(OBJECTS);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < OBJECTS; i++) {
+            objects[i] = new Object();
+            XposedHelpers.setAdditionalInstanceField(objects[i], KEY, i);
+        }
+    }
+
+    private Object nextObject(Cursor cursor) {
+        cursor.next = (cursor.next + 1) & (OBJECTS - 1);
+        return objects[cursor.next];
+    }
+
+    @Benchmark
+    public Object get(Cursor cursor) {
+        return XposedHelpers.getAdditionalInstanceField(nextObject(cursor), KEY);
+    }
+
+    @Benchmark
+    public Object getMissing(Cursor cursor) {
+        return XposedHelpers.getAdditionalInstanceField(nextObject(cursor), "missing");
+    }
+
+    @Benchmark
+    public Object set(Cursor cursor) {
+        return XposedHelpers.setAdditionalInstanceField(nextObject(cursor), KEY, cursor.next);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object getContended(Cursor cursor) {
+        return XposedHelpers.getAdditionalInstanceField(nextObject(cursor), KEY);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object setContended(Cursor cursor) {
+        return XposedHelpers.setAdditionalInstanceField(nextObject(cursor), KEY, cursor.next);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(6)
+    public Object mixedGet(Cursor cursor) {
+        return XposedHelpers.getAdditionalInstanceField(nextObject(cursor), KEY);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public Object mixedSet(Cursor cursor) {
+        return XposedHelpers.setAdditionalInstanceField(nextObject(cursor), KEY, cursor.next);
+    }
+}
@@ -0,0 +1,79 @@
+package org.lsposed.lspd.benchmark;
+
+import org.lsposed.lspd.impl.LSPosedBridge;
+import org.lsposed.lspd.nativebridge.HookBridge;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+import de.robv.android.xposed.XposedBridge;
+import de.robv.android.xposed.callbacks.XCallback;
+
+/**
+ * Hooked calls that end in an exception: thrown by the original and propagated to the caller,
+ * or thrown by a modern or legacy callback, which is logged and swallowed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ExceptionPropagationBenchmark {
+    @Param({"original", "modern", "legacy"})
+    public String thrower;
+
+    private Runnable unhook;
+    private LSPosedBridge.NativeHooker<?> hooker;
+    private Object[] args;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        var clazz = HostSupport.loadTarget("Target");
+        var receiver = clazz.getConstructor().newInstance();
+        switch (thrower) {
+            case "original": {
+                var target = clazz.getMethod("fail");
+                unhook = LSPosedBridge.doHook(target, XCallback.PRIORITY_DEFAULT, Hookers.Nop.class)::unhook;
+                hooker = HookBridge.hookerOf(target);
+                args = new Object[]{receiver};
+                break;
+            }
+            case "modern": {
+                var target = clazz.getMethod("add", int.class, int.class);
+                unhook = LSPosedBridge.doHook(target, XCallback.PRIORITY_DEFAULT, Hookers.Throwing.class)::unhook;
+                hooker = HookBridge.hookerOf(target);
+                args = new Object[]{receiver, 1, 2};
+                break;
+            }
+            case "legacy": {
+                var target = clazz.getMethod("add", int.class, int.class);
+                unhook = XposedBridge.hookMethod(target, new Hookers.LegacyThrowing())::unhook;
+                hooker = HookBridge.hookerOf(target);
+                args = new Object[]{receiver, 1, 2};
+                break;
+            }
+            default:
+                throw new IllegalArgumentException(thrower);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        unhook.run();
+    }
+
+    @Benchmark
+    public Object dispatch() {
+        try {
+            return hooker.callback(args);
+        } catch (Throwable t) {
+            return t;
+        }
+    }
+}
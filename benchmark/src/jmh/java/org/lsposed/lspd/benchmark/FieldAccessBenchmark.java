@@ -0,0 +1,77 @@
+package org.lsposed.lspd.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import de.robv.android.xposed.FieldAccessor;
+import de.robv.android.xposed.XposedHelpers;
+
+/**
+ * Field reads and writes by name through {@link XposedHelpers}, through a kept
+ * {@link FieldAccessor} and through a kept {@link Field} for reference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FieldAccessBenchmark {
+    @SuppressWarnings("unused")
+    private static class Holder {
+        private int count = 42;
+        private Object context = new Object();
+    }
+
+    private final Holder holder = new Holder();
+    private FieldAccessor countAccessor;
+    private FieldAccessor contextAccessor;
+    private Field countField;
+
+    @Setup
+    public void setUp() {
+        countAccessor = XposedHelpers.accessor(Holder.class, "count");
+        contextAccessor = XposedHelpers.accessor(Holder.class, "context");
+        countField = XposedHelpers.findField(Holder.class, "count");
+    }
+
+    @Benchmark
+    public int getIntByName() {
+        return XposedHelpers.getIntField(holder, "count");
+    }
+
+    @Benchmark
+    public Object getObjectByName() {
+        return XposedHelpers.getObjectField(holder, "context");
+    }
+
+    @Benchmark
+    public void setIntByName() {
+        XposedHelpers.setIntField(holder, "count", 42);
+    }
+
+    @Benchmark
+    public int getIntAccessor() {
+        return countAccessor.getInt(holder);
+    }
+
+    @Benchmark
+    public Object getObjectAccessor() {
+        return contextAccessor.get(holder);
+    }
+
+    @Benchmark
+    public void setIntAccessor() {
+        countAccessor.setInt(holder, 42);
+    }
+
+    @Benchmark
+    public int getIntReflective() throws IllegalAccessException {
+        return countField.getInt(holder);
+    }
+}
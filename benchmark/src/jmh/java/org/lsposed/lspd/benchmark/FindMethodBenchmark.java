@@ -0,0 +1,66 @@
+package org.lsposed.lspd.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import de.robv.android.xposed.XposedHelpers;
+
+/**
+ * Member lookups through {@link XposedHelpers}. Results of the name based lookups are cached,
+ * so after warmup these measure the cache path that modules hit on every call of their hooks.
+ * The signature searches are not cached and go through the per-class member index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FindMethodBenchmark {
+    private Class<?> clazz;
+
+    @Setup
+    public void setUp() throws ClassNotFoundException {
+        clazz = HostSupport.loadTarget("Target");
+    }
+
+    @Benchmark
+    public Method exact() {
+        return XposedHelpers.findMethodExact(clazz, "overloaded", String.class, int.class);
+    }
+
+    @Benchmark
+    public Method bestMatchByTypes() {
+        return XposedHelpers.findMethodBestMatch(clazz, "overloaded", Integer.class, long.class);
+    }
+
+    @Benchmark
+    public Method bestMatchByArgs() {
+        return XposedHelpers.findMethodBestMatch(clazz, "overloaded", "s");
+    }
+
+    @Benchmark
+    public Object missing() {
+        try {
+            return XposedHelpers.findMethodBestMatch(clazz, "missing", String.class);
+        } catch (NoSuchMethodError e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Method[] byExactParameters() {
+        return XposedHelpers.findMethodsByExactParameters(clazz, void.class, String.class, int.class);
+    }
+
+    @Benchmark
+    public Field firstFieldByExactType() {
+        return XposedHelpers.findFirstFieldByExactType(clazz, RuntimeException.class);
+    }
+}
@@ -0,0 +1,72 @@
+package org.lsposed.lspd.benchmark;
+
+import org.lsposed.lspd.impl.LSPosedBridge;
+import org.lsposed.lspd.nativebridge.HookBridge;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import de.robv.android.xposed.XC_MethodHook;
+import de.robv.android.xposed.XposedBridge;
+import de.robv.android.xposed.callbacks.XCallback;
+import io.github.libxposed.api.XposedInterface;
+
+/**
+ * One hooked call through {@link LSPosedBridge.NativeHooker#callback}, as made by the trampoline,
+ * with the given number of modern and legacy callbacks on the method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HookDispatchBenchmark {
+    @Param({"0", "1", "8"})
+    public int modern;
+
+    @Param({"0", "1", "8"})
+    public int legacy;
+
+    private final List<XposedInterface.MethodUnhooker<Method>> modernUnhookers = new ArrayList<>();
+    private final List<XC_MethodHook.Unhook> legacyUnhookers = new ArrayList<>();
+    private LSPosedBridge.NativeHooker<?> hooker;
+    private Object[] args;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        var clazz = HostSupport.loadTarget("Target");
+        var target = clazz.getMethod("add", int.class, int.class);
+        for (int i = 0; i < modern; i++) {
+            modernUnhookers.add(LSPosedBridge.doHook(target, XCallback.PRIORITY_DEFAULT, Hookers.Nop.class));
+        }
+        for (int i = 0; i < legacy; i++) {
+            legacyUnhookers.add(XposedBridge.hookMethod(target, new Hookers.LegacyNop()));
+        }
+        if (modern == 0 && legacy == 0) {
+            // a hooked method whose callbacks have all been removed again
+            LSPosedBridge.doHook(target, XCallback.PRIORITY_DEFAULT, Hookers.Nop.class).unhook();
+        }
+        hooker = HookBridge.hookerOf(target);
+        args = new Object[]{clazz.getConstructor().newInstance(), 1, 2};
+    }
+
+    @TearDown
+    public void tearDown() {
+        modernUnhookers.forEach(XposedInterface.MethodUnhooker::unhook);
+        legacyUnhookers.forEach(XC_MethodHook.Unhook::unhook);
+    }
+
+    @Benchmark
+    public Object dispatch() throws Throwable {
+        return hooker.callback(args);
+    }
+}
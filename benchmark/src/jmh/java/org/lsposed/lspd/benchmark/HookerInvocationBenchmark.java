@@ -0,0 +1,82 @@
+package org.lsposed.lspd.benchmark;
+
+import org.lsposed.lspd.impl.LSPosedHookCallback;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import io.github.libxposed.api.XposedInterface;
+
+/**
+ * Calling the before and after methods of stacked modern hookers reflectively, as dispatch used
+ * to, against the adapted {@link MethodHandle}s that {@code LSPosedBridge.HookerCallback} now
+ * holds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HookerInvocationBenchmark {
+    private static final MethodType beforeType = MethodType.methodType(Object.class, XposedInterface.BeforeHookCallback.class);
+    private static final MethodType afterType = MethodType.methodType(void.class, XposedInterface.AfterHookCallback.class, Object.class);
+
+    @Param({"1", "4", "16"})
+    public int hookers;
+
+    private Method[] beforeMethods;
+    private Method[] afterMethods;
+    private MethodHandle[] beforeHandles;
+    private MethodHandle[] afterHandles;
+    private Object[] contexts;
+    private final LSPosedHookCallback<Method> callback = new LSPosedHookCallback<>();
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        var before = Hookers.Nop.class.getMethod("before", XposedInterface.BeforeHookCallback.class);
+        var after = Hookers.Nop.class.getMethod("after", XposedInterface.AfterHookCallback.class, Object.class);
+        var lookup = MethodHandles.lookup();
+        beforeMethods = new Method[hookers];
+        afterMethods = new Method[hookers];
+        beforeHandles = new MethodHandle[hookers];
+        afterHandles = new MethodHandle[hookers];
+        contexts = new Object[hookers];
+        for (int i = 0; i < hookers; i++) {
+            beforeMethods[i] = before;
+            afterMethods[i] = after;
+            beforeHandles[i] = lookup.unreflect(before).asType(beforeType);
+            afterHandles[i] = lookup.unreflect(after).asType(afterType);
+        }
+    }
+
+    @Benchmark
+    public Object reflective() throws ReflectiveOperationException {
+        for (int i = 0; i < hookers; i++) {
+            contexts[i] = beforeMethods[i].invoke(null, callback);
+        }
+        for (int i = hookers - 1; i >= 0; i--) {
+            afterMethods[i].invoke(null, callback, contexts[i]);
+        }
+        return contexts;
+    }
+
+    @Benchmark
+    public Object methodHandle() throws Throwable {
+        for (int i = 0; i < hookers; i++) {
+            contexts[i] = (Object) beforeHandles[i].invokeExact((XposedInterface.BeforeHookCallback) callback);
+        }
+        for (int i = hookers - 1; i >= 0; i--) {
+            afterHandles[i].invokeExact((XposedInterface.AfterHookCallback) callback, contexts[i]);
+        }
+        return contexts;
+    }
+}
@@ -0,0 +1,52 @@
+package org.lsposed.lspd.benchmark;
+
+import de.robv.android.xposed.XC_MethodHook;
+import io.github.libxposed.api.XposedInterface;
+import io.github.libxposed.api.annotations.AfterInvocation;
+import io.github.libxposed.api.annotations.BeforeInvocation;
+import io.github.libxposed.api.annotations.XposedHooker;
+
+/**
+ * Callbacks used by the dispatch benchmarks, for both APIs.
+ */
+public final class Hookers {
+    private Hookers() {
+    }
+
+    @XposedHooker
+    public static class Nop implements XposedInterface.Hooker {
+        @BeforeInvocation
+        public static Object before(XposedInterface.BeforeHookCallback callback) {
+            return callback;
+        }
+
+        @AfterInvocation
+        public static void after(XposedInterface.AfterHookCallback callback, Object context) {
+        }
+    }
+
+    @XposedHooker
+    public static class Throwing implements XposedInterface.Hooker {
+        @BeforeInvocation
+        public static Object before(XposedInterface.BeforeHookCallback callback) {
+            throw new IllegalStateException("before failed");
+        }
+    }
+
+    public static class LegacyNop extends XC_MethodHook {
+        @Override
+        protected void beforeHookedMethod(MethodHookParam<?> param) {
+        }
+
+        @Override
+        protected void afterHookedMethod(MethodHookParam<?> param) {
+        }
+    }
+
+    public static class LegacyThrowing extends XC_MethodHook {
+        @Override
+        protected void beforeHookedMethod(MethodHookParam<?> param) {
+            throw new IllegalStateException("before failed");
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.lsposed.lspd.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Loads the classes of {@code org.lsposed.lspd.benchmark.target} with a class loader of their
+ * own, like an app class loader on a device, so that XposedBridge and LSPosedBridge accept them
+ * as hook targets.
+ */
+public final class HostSupport {
+    private static final String TARGET_PACKAGE = "org.lsposed.lspd.benchmark.target.";
+
+    private static final ClassLoader targetLoader = new ClassLoader(HostSupport.class.getClassLoader()) {
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith(TARGET_PACKAGE)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                var clazz = findLoadedClass(name);
+                if (clazz == null) {
+                    byte[] bytes;
+                    try (var in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                        if (in == null) throw new ClassNotFoundException(name);
+                        bytes = in.readAllBytes();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    clazz = defineClass(name, bytes, 0, bytes.length);
+                }
+                if (resolve) resolveClass(clazz);
+                return clazz;
+            }
+        }
+    };
+
+    private HostSupport() {
+    }
+
+    public static Class<?> loadTarget(String simpleName) throws ClassNotFoundException {
+        return Class.forName(TARGET_PACKAGE + simpleName, true, targetLoader);
+    }
+}
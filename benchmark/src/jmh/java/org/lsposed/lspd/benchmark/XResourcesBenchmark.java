@@ -0,0 +1,84 @@
+package org.lsposed.lspd.benchmark;
+
+import android.content.res.XResources;
+
+import org.lsposed.lspd.nativebridge.HookBridge;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code XResources.getReplacement}, which every resource getter of a hooked app goes through,
+ * for ids that have a replacement and for ids that don't.
+ * <p>
+ * {@link #replay} runs a fixed trace of {@value #TRACE} lookups of drawable and string ids, as
+ * {@code getDrawable} and {@code getString} do before falling back to the real resources. The
+ * getters themselves are not called, as the resources behind them don't exist on the host.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class XResourcesBenchmark {
+    private static final int DRAWABLE_IDS = 0x7f080000;
+    private static final int STRING_IDS = 0x7f130000;
+    private static final int IDS = 1024;
+    private static final int TRACE = 100_000;
+
+    @Param({"16", "512"})
+    public int replacements;
+
+    private XResources resources;
+    private MethodHandle getReplacement;
+    private final int[] trace = new int[TRACE];
+    private int next;
+
+    @Setup
+    public void setUp() throws Throwable {
+        var lookup = MethodHandles.privateLookupIn(XResources.class, MethodHandles.lookup());
+        // the constructor chain ends in a dummy super class, so set up the instance by hand
+        resources = HookBridge.allocateObject(XResources.class);
+        lookup.findVirtual(XResources.class, "initResDir", MethodType.methodType(void.class, String.class))
+                .invoke(resources, "/data/app/org.lsposed.benchmark/base.apk");
+        getReplacement = lookup.findVirtual(XResources.class, "getReplacement", MethodType.methodType(Object.class, int.class));
+
+        // spread over the id space, with misses between the replaced ids
+        int stride = IDS / replacements;
+        for (int i = 0; i < replacements; i++) {
+            resources.setReplacement(DRAWABLE_IDS + i * stride, "drawable" + i);
+            resources.setReplacement(STRING_IDS + i * stride, "string" + i);
+        }
+
+        var random = new Random(42);
+        for (int i = 0; i < TRACE; i++) {
+            trace[i] = (random.nextBoolean() ? DRAWABLE_IDS : STRING_IDS) + random.nextInt(IDS);
+        }
+    }
+
+    @Benchmark
+    public Object lookup() throws Throwable {
+        next = (next + 1) & (IDS - 1);
+        return (Object) getReplacement.invokeExact(resources, DRAWABLE_IDS + next);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRACE)
+    public int replay() throws Throwable {
+        int found = 0;
+        for (int id : trace) {
+            if ((Object) getReplacement.invokeExact(resources, id) != null) found++;
+        }
+        return found;
+    }
+}
@@ -0,0 +1,40 @@
+package org.lsposed.lspd.benchmark.target;
+
+/**
+ * Methods hooked by the benchmarks. Loaded through {@link org.lsposed.lspd.benchmark.HostSupport}
+ * by a class loader of its own, as classes of the framework class loader cannot be hooked.
+ */
+public class Target {
+    public static final RuntimeException FAILURE = new Failure();
+
+    public int add(int a, int b) {
+        return a + b;
+    }
+
+    public static Object identity(Object o) {
+        return o;
+    }
+
+    public void fail() {
+        throw FAILURE;
+    }
+
+    public void overloaded(Object o) {
+    }
+
+    public void overloaded(CharSequence s) {
+    }
+
+    public void overloaded(String s, int i) {
+    }
+
+    public void overloaded(Number n, long l) {
+    }
+
+    // preallocated and without a stack trace, so that only the propagation is measured
+    private static final class Failure extends RuntimeException {
+        Failure() {
+            super("original failed", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package org.lsposed.lspd.nativebridge;
+
+import org.lsposed.lspd.impl.LSPosedBridge;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Host stand-in for the native hook bridge, with the same entry points as the one in :core.
+ * <p>
+ * Nothing is hooked for real. Every hooked executable gets a {@link LSPosedBridge.NativeHooker}
+ * whose snapshot is republished on every change, exactly like hook_bridge.cpp does, and the
+ * benchmarks call {@link LSPosedBridge.NativeHooker#callback} in place of the trampoline. As the
+ * method itself is left untouched, calling it is what invoking the original means here.
+ */
+public class HookBridge {
+    private static final Object[][] EMPTY_SNAPSHOT = {new Object[0], new Object[0]};
+
+    private static final Map<Executable, HookItem> hookedMethods = new ConcurrentHashMap<>();
+    private static final Map<Executable, MethodHandle> originals = new ConcurrentHashMap<>();
+    private static final List<MethodHandle> specialInvokers = new ArrayList<>();
+
+    private static final Field snapshotField;
+
+    static {
+        try {
+            snapshotField = LSPosedBridge.NativeHooker.class.getDeclaredField("snapshot");
+            snapshotField.setAccessible(true);
+        } catch (NoSuchFieldException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final class Callback {
+        final int priority;
+        final Object callback;
+
+        Callback(int priority, Object callback) {
+            this.priority = priority;
+            this.callback = callback;
+        }
+    }
+
+    private static final class HookItem {
+        final Object hooker;
+        // ordered by descending priority, equal priorities in insertion order
+        final List<Callback> modern = new ArrayList<>();
+        final List<Callback> legacy = new ArrayList<>();
+        Object[][] snapshot = EMPTY_SNAPSHOT;
+
+        HookItem(Object hooker) {
+            this.hooker = hooker;
+        }
+
+        void add(boolean useModernApi, int priority, Object callback) {
+            var list = useModernApi ? modern : legacy;
+            int i = 0;
+            while (i < list.size() && list.get(i).priority >= priority) i++;
+            list.add(i, new Callback(priority, callback));
+        }
+
+        boolean remove(boolean useModernApi, Object callback) {
+            return (useModernApi ? modern : legacy).removeIf(c -> c.callback == callback);
+        }
+
+        void publish() {
+            var modern = new Object[this.modern.size()];
+            for (int i = 0; i < modern.length; i++) modern[i] = this.modern.get(i).callback;
+            var legacy = new Object[this.legacy.size()];
+            for (int i = 0; i < legacy.length; i++) legacy[i] = this.legacy.get(i).callback;
+            snapshot = new Object[][]{modern, legacy};
+            try {
+                snapshotField.set(hooker, snapshot);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * The object the trampoline of {@code method} would call, or {@code null} if not hooked.
+     */
+    public static LSPosedBridge.NativeHooker<?> hookerOf(Executable method) {
+        var item = hookedMethods.get(method);
+        return item == null ? null : (LSPosedBridge.NativeHooker<?>) item.hooker;
+    }
+
+    public static boolean hookMethod(boolean useModernApi, Executable hookMethod, int priority, Object callback) {
+        HookItem item;
+        try {
+            item = hookedMethods.computeIfAbsent(hookMethod, m -> {
+                try {
+                    var ctor = LSPosedBridge.NativeHooker.class.getDeclaredConstructor(Executable.class);
+                    ctor.setAccessible(true);
+                    return new HookItem(ctor.newInstance(m));
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (IllegalStateException e) {
+            return false;
+        }
+        synchronized (item) {
+            item.add(useModernApi, priority, callback);
+            item.publish();
+        }
+        return true;
+    }
+
+    public static boolean[] hookMethods(boolean useModernApi, Executable[] hookMethods, int priority, Object callback) {
+        var results = new boolean[hookMethods.length];
+        for (int i = 0; i < hookMethods.length; i++) {
+            results[i] = hookMethod(useModernApi, hookMethods[i], priority, callback);
+        }
+        return results;
+    }
+
+    public static boolean unhookMethod(boolean useModernApi, Executable hookMethod, Object callback) {
+        var item = hookedMethods.get(hookMethod);
+        if (item == null) return false;
+        synchronized (item) {
+            if (!item.remove(useModernApi, callback)) return false;
+            item.publish();
+        }
+        return true;
+    }
+
+    public static boolean deoptimizeMethod(Executable method) {
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> T allocateObject(Class<T> clazz) throws InstantiationException {
+        try {
+            var unsafeClass = Class.forName("sun.misc.Unsafe");
+            var theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return (T) unsafeClass.getMethod("allocateInstance", Class.class).invoke(theUnsafe.get(null), clazz);
+        } catch (ReflectiveOperationException e) {
+            var exception = new InstantiationException(clazz.getName());
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    // (Object thisObject, Object[] args)Object, with the receiver ignored for static methods
+    private static MethodHandle original(Executable method) {
+        var handle = originals.get(method);
+        if (handle != null) return handle;
+        return originals.computeIfAbsent(method, m -> {
+            if (m instanceof Constructor) {
+                throw new UnsupportedOperationException("Constructors cannot be called on an existing object on the host: " + m);
+            }
+            try {
+                var lookup = MethodHandles.privateLookupIn(m.getDeclaringClass(), MethodHandles.lookup());
+                var target = lookup.unreflect((Method) m);
+                var generic = target.asType(target.type().generic());
+                var spread = generic.asSpreader(Object[].class, m.getParameterCount());
+                if (Modifier.isStatic(m.getModifiers())) {
+                    spread = MethodHandles.dropArguments(spread, 0, Object.class);
+                }
+                return spread.asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static Object invoke(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable {
+        var handle = original(method);
+        if (args == null) args = new Object[0];
+        if (args.length != method.getParameterCount()) {
+            throw new IllegalArgumentException("Wrong number of arguments; expected " + method.getParameterCount() + ", got " + args.length);
+        }
+        // unlike Method.invoke, argument conversion failures surface as thrown by the original
+        try {
+            return (Object) handle.invokeExact(thisObject, args);
+        } catch (Throwable t) {
+            if (wrapThrowable) throw new InvocationTargetException(t);
+            throw t;
+        }
+    }
+
+    public static boolean invokeOriginalZ(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable {
+        return (Boolean) invoke(method, wrapThrowable, thisObject, args);
+    }
+
+    public static byte invokeOriginalB(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable {
+        return (Byte) invoke(method, wrapThrowable, thisObject, args);
+    }
+
+    public static char invokeOriginalC(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable {
+        return (Character) invoke(method, wrapThrowable, thisObject, args);
+    }
+
+    public static short invokeOriginalS(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable {
+        return (Short) invoke(method, wrapThrowable, thisObject, args);
+    }
+
+    public static int invokeOriginalI(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable {
+        return (Integer) invoke(method, wrapThrowable, thisObject, args);
+    }
+
+    public static long invokeOriginalJ(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable {
+        return (Long) invoke(method, wrapThrowable, thisObject, args);
+    }
+
+    public static float invokeOriginalF(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable {
+        return (Float) invoke(method, wrapThrowable, thisObject, args);
+    }
+
+    public static double invokeOriginalD(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable {
+        return (Double) invoke(method, wrapThrowable, thisObject, args);
+    }
+
+    public static Object invokeOriginalL(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable {
+        return invoke(method, wrapThrowable, thisObject, args);
+    }
+
+    public static void invokeOriginalV(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable {
+        invoke(method, wrapThrowable, thisObject, args);
+    }
+
+    public static long resolveSpecialInvoker(Executable method) {
+        if (method instanceof Constructor) {
+            throw new UnsupportedOperationException("Constructors cannot be called on an existing object on the host: " + method);
+        }
+        try {
+            var declaringClass = method.getDeclaringClass();
+            var lookup = MethodHandles.privateLookupIn(declaringClass, MethodHandles.lookup());
+            var target = lookup.unreflectSpecial((Method) method, declaringClass);
+            var generic = target.asType(target.type().generic());
+            var spread = generic.asSpreader(Object[].class, method.getParameterCount());
+            synchronized (specialInvokers) {
+                specialInvokers.add(spread.asType(MethodType.methodType(Object.class, Object.class, Object[].class)));
+                return specialInvokers.size() - 1;
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static void freeSpecialInvoker(long invoker) {
+        synchronized (specialInvokers) {
+            specialInvokers.set((int) invoker, null);
+        }
+    }
+
+    public static Object invokeSpecial(Object owner, long invoker, Object thisObject, Object[] args) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        if (thisObject == null) {
+            throw new IllegalArgumentException("this == null");
+        }
+        MethodHandle handle;
+        synchronized (specialInvokers) {
+            handle = specialInvokers.get((int) invoker);
+        }
+        try {
+            return (Object) handle.invokeExact(thisObject, args == null ? new Object[0] : args);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    public static boolean instanceOf(Object obj, Class<?> clazz) {
+        return clazz.isInstance(obj);
+    }
+
+    public static boolean setTrusted(Object cookie) {
+        return false;
+    }
+}
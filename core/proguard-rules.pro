@@ -15,14 +15,10 @@
     @io.github.libxposed.api.annotations.BeforeInvocation <methods>;
     @io.github.libxposed.api.annotations.AfterInvocation <methods>;
 }
--keepclassmembers class org.lsposed.lspd.impl.LSPosedBridge$NativeHooker {
+-keep class org.lsposed.lspd.impl.LSPosedBridge$NativeHooker {
     <init>(java.lang.reflect.Executable);
     callback(...);
-}
--keepclassmembers class org.lsposed.lspd.impl.LSPosedBridge$HookerCallback {
-    final *** beforeInvocation;
-    final *** afterInvocation;
-    HookerCallback(...);
+    volatile *** snapshot;
 }
 -assumenosideeffects class android.util.Log {
     public static *** v(...);
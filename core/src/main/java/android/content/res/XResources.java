@@ -21,12 +21,10 @@
 package android.content.res;
 
 import static org.lsposed.lspd.nativebridge.ResourcesHook.rewriteXmlReferencesNative;
-import static de.robv.android.xposed.XposedHelpers.decrementMethodDepth;
 import static de.robv.android.xposed.XposedHelpers.findAndHookMethod;
 import static de.robv.android.xposed.XposedHelpers.getBooleanField;
 import static de.robv.android.xposed.XposedHelpers.getLongField;
 import static de.robv.android.xposed.XposedHelpers.getObjectField;
-import static de.robv.android.xposed.XposedHelpers.incrementMethodDepth;
 
 import android.content.Context;
 import android.content.pm.PackageParser;
@@ -50,19 +48,23 @@ import android.view.ViewGroup;
 import androidx.annotation.NonNull;
 import androidx.annotation.RequiresApi;
 
+import org.lsposed.lspd.impl.HookMetrics;
+import org.lsposed.lspd.util.ConcurrentWeakIdentityMap;
 import org.xmlpull.v1.XmlPullParser;
 
 import java.io.File;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
 
 import de.robv.android.xposed.IXposedHookZygoteInit;
 import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XC_MethodHook.MethodHookParam;
 import de.robv.android.xposed.XposedBridge;
 import de.robv.android.xposed.XposedBridge.CopyOnWriteSortedSet;
+import de.robv.android.xposed.XposedHelpers.MethodDepth;
 import de.robv.android.xposed.XposedInit;
 import de.robv.android.xposed.callbacks.XC_LayoutInflated;
 import de.robv.android.xposed.callbacks.XC_LayoutInflated.LayoutInflatedParam;
@@ -79,41 +81,51 @@ import xposed.dummy.XTypedArraySuperClass;
  */
 @SuppressWarnings("JniMissingFunction")
 public class XResources extends XResourcesSuperClass {
-	private static final SparseArray<HashMap<String, Object>> sReplacements = new SparseArray<>();
-	private static final SparseArray<HashMap<String, ResourceNames>> sResourceNames = new SparseArray<>();
-
-	// A resource ID is a 32 bit number of the form: PPTTNNNN. PP is the package the resource is for;
-	// TT is the type of the resource;
-	// NNNN is the name of the resource in that type.
-	// For applications resources, PP is always 0x7f.
-	private static final byte[] sSystemReplacementsCache = new byte[256]; // bitmask: 0x000700ff => 2048 bit => 256 bytes
-	private byte[] mReplacementsCache; // bitmask: 0x0007007f => 1024 bit => 128 bytes
-	private static final HashMap<String, byte[]> sReplacementsCacheMap = new HashMap<>();
+	private static final ResourceIdTable<Object> sReplacements = new ResourceIdTable<>(256);
+	// resource dirs interned to the slots of ResourceIdTable, slot 0 is for system-wide values
+	private static final HashMap<String, Integer> sResDirIds = new HashMap<>();
+	private static final ResourceIdTable<ResourceNames> sResourceNames = new ResourceIdTable<>(16);
+
+	// lookups of getReplacement, how many pass the membership check and how many of those find nothing
+	private static final HookMetrics.Counter sReplacementLookups = HookMetrics.counter("android.content.res.XResources#getReplacement", "lookups");
+	private static final HookMetrics.Counter sReplacementCandidates = HookMetrics.counter("android.content.res.XResources#getReplacement", "candidates");
+	private static final HookMetrics.Counter sReplacementFalsePositives = HookMetrics.counter("android.content.res.XResources#getReplacement", "false positives");
+
 	private static final SparseArray<ColorStateList> sColorStateListCache = new SparseArray<>(0);
 
-	private static final SparseArray<HashMap<String, CopyOnWriteSortedSet<XC_LayoutInflated>>> sLayoutCallbacks = new SparseArray<>();
-	private static final WeakHashMap<XmlResourceParser, XMLInstanceDetails> sXmlInstanceDetails = new WeakHashMap<>();
+	private static final ResourceIdTable<CopyOnWriteSortedSet<XC_LayoutInflated>> sLayoutCallbacks = new ResourceIdTable<>(16);
+	private static final ConcurrentWeakIdentityMap<XmlResourceParser, XMLInstanceDetails> sXmlInstanceDetails = new ConcurrentWeakIdentityMap<>();
 
 	private static final String EXTRA_XML_INSTANCE_DETAILS = "xmlInstanceDetails";
 	private static final ThreadLocal<LinkedList<MethodHookParam>> sIncludedLayouts = ThreadLocal.withInitial(() -> new LinkedList<>());
 
+	private static final MethodDepth sGetDrawableDepth = MethodDepth.of("getDrawable");
+	private static final MethodDepth sGetDrawableForDensityDepth = MethodDepth.of("getDrawableForDensity");
+
 	private static final HashMap<String, Long> sResDirLastModified = new HashMap<>();
 	private static final HashMap<String, String> sResDirPackageNames = new HashMap<>();
 	private static ThreadLocal<Object> sLatestResKey = null;
 
 	private String mResDir;
+	private int mResDirId;
 	private String mPackageName;
 
 	public XResources(ClassLoader classLoader, String resDir) {
 		super(classLoader);
+		initResDir(resDir);
+	}
 
+	private void initResDir(String resDir) {
 		this.mResDir = resDir;
+		this.mResDirId = getResDirId(resDir);
 		this.mPackageName = getPackageName(resDir);
+	}
 
-		if (resDir != null) {
-			synchronized (sReplacementsCacheMap) {
-				mReplacementsCache = sReplacementsCacheMap.computeIfAbsent(resDir, k -> new byte[128]);
-			}
+	private static int getResDirId(String resDir) {
+		if (resDir == null)
+			return 0;
+		synchronized (sResDirIds) {
+			return sResDirIds.computeIfAbsent(resDir, k -> sResDirIds.size() + 1);
 		}
 	}
 
@@ -124,7 +136,7 @@ public class XResources extends XResourcesSuperClass {
 
 	/** @hide */
 	public boolean isFirstLoad() {
-		synchronized (sReplacements) {
+		synchronized (sResDirLastModified) {
 			if (mResDir == null)
 				return false;
 
@@ -141,10 +153,7 @@ public class XResources extends XResourcesSuperClass {
 				return true;
 
 			// file was changed meanwhile => remove old replacements
-			for (int i = 0; i < sReplacements.size(); i++) {
-				sReplacements.valueAt(i).remove(mResDir);
-			}
-			Arrays.fill(mReplacementsCache, (byte) 0);
+			sReplacements.removeAll(mResDirId);
 			return true;
 		}
 	}
@@ -222,10 +231,7 @@ public class XResources extends XResourcesSuperClass {
 				if (param.hasThrowable())
 					return;
 
-				XMLInstanceDetails details;
-				synchronized (sXmlInstanceDetails) {
-					details = sXmlInstanceDetails.get(param.args[0]);
-				}
+				XMLInstanceDetails details = sXmlInstanceDetails.get(param.args[0]);
 				if (details != null) {
 					LayoutInflatedParam liparam = new LayoutInflatedParam(details.callbacks);
 					liparam.view = (View) param.getResult();
@@ -319,17 +325,7 @@ public class XResources extends XResourcesSuperClass {
 	}
 
 	private static void putResourceNames(String resDir, ResourceNames resNames) {
-		int id = resNames.id;
-		synchronized (sResourceNames) {
-			HashMap<String, ResourceNames> inner = sResourceNames.get(id);
-			if (inner == null) {
-				inner = new HashMap<>();
-				sResourceNames.put(id, inner);
-			}
-			synchronized (inner) {
-				inner.put(resDir, resNames);
-			}
-		}
+		sResourceNames.put(resNames.id, getResDirId(resDir), resNames);
 	}
 
 	// =======================================================
@@ -565,6 +561,7 @@ public class XResources extends XResourcesSuperClass {
 
 	private static void setReplacement(int id, Object replacement, XResources res) {
 		String resDir = (res != null) ? res.mResDir : null;
+		int resDirId = (res != null) ? res.mResDirId : 0;
 		if (res == null) {
 			try {
 				XposedInit.hookResources();
@@ -580,27 +577,7 @@ public class XResources extends XResourcesSuperClass {
 		if (replacement instanceof Drawable)
 			throw new IllegalArgumentException("Drawable replacements are deprecated since Xposed 2.1. Use DrawableLoader instead.");
 
-		// Cache that we have a replacement for this ID, false positives are accepted to save memory.
-		if (id < 0x7f000000) {
-			int cacheKey = (id & 0x00070000) >> 11 | (id & 0xf8) >> 3;
-			synchronized (sSystemReplacementsCache) {
-				sSystemReplacementsCache[cacheKey] |= 1 << (id & 7);
-			}
-		} else {
-			int cacheKey = (id & 0x00070000) >> 12 | (id & 0x78) >> 3;
-			synchronized (res.mReplacementsCache) {
-				res.mReplacementsCache[cacheKey] |= 1 << (id & 7);
-			}
-		}
-
-		synchronized (sReplacements) {
-			HashMap<String, Object> inner = sReplacements.get(id);
-			if (inner == null) {
-				inner = new HashMap<>();
-				sReplacements.put(id, inner);
-			}
-			inner.put(resDir, replacement);
-		}
+		sReplacements.put(id, resDirId, replacement);
 	}
 
 	// =======================================================
@@ -611,31 +588,20 @@ public class XResources extends XResourcesSuperClass {
 		if (id <= 0)
 			return null;
 
-		// Check the cache whether it's worth looking for replacements
-		if (id < 0x7f000000) {
-			int cacheKey = (id & 0x00070000) >> 11 | (id & 0xf8) >> 3;
-			if ((sSystemReplacementsCache[cacheKey] & (1 << (id & 7))) == 0)
-				return null;
-		} else if (mResDir != null) {
-			int cacheKey = (id & 0x00070000) >> 12 | (id & 0x78) >> 3;
-			if ((mReplacementsCache[cacheKey] & (1 << (id & 7))) == 0)
-				return null;
-		}
-
-		HashMap<String, Object> inner;
-		synchronized (sReplacements) {
-			inner = sReplacements.get(id);
-		}
+		boolean countLookups = HookMetrics.isEnabled();
+		if (countLookups)
+			sReplacementLookups.increment();
 
-		if (inner == null)
+		if (!sReplacements.mayContain(id, mResDirId))
 			return null;
 
-		synchronized (inner) {
-			Object result = inner.get(mResDir);
-			if (result != null || mResDir == null)
-				return result;
-			return inner.get(null);
+		Object result = sReplacements.get(id, mResDirId);
+		if (countLookups) {
+			sReplacementCandidates.increment();
+			if (result == null)
+				sReplacementFalsePositives.increment();
 		}
+		return result;
 	}
 
 	/** @hide */
@@ -757,7 +723,7 @@ public class XResources extends XResourcesSuperClass {
 	@Override
 	public Drawable getDrawable(int id) throws NotFoundException {
 		try {
-			if (incrementMethodDepth("getDrawable") == 1) {
+			if (sGetDrawableDepth.increment() == 1) {
 				Object replacement = getReplacement(id);
 				if (replacement instanceof DrawableLoader) {
 					try {
@@ -775,7 +741,7 @@ public class XResources extends XResourcesSuperClass {
 			}
 			return super.getDrawable(id);
 		} finally {
-			decrementMethodDepth("getDrawable");
+			sGetDrawableDepth.decrement();
 		}
 	}
 
@@ -783,7 +749,7 @@ public class XResources extends XResourcesSuperClass {
 	@Override
 	public Drawable getDrawable(int id, Theme theme) throws NotFoundException {
 		try {
-			if (incrementMethodDepth("getDrawable") == 1) {
+			if (sGetDrawableDepth.increment() == 1) {
 				Object replacement = getReplacement(id);
 				if (replacement instanceof DrawableLoader) {
 					try {
@@ -801,7 +767,7 @@ public class XResources extends XResourcesSuperClass {
 			}
 			return super.getDrawable(id, theme);
 		} finally {
-			decrementMethodDepth("getDrawable");
+			sGetDrawableDepth.decrement();
 		}
 	}
 
@@ -809,7 +775,7 @@ public class XResources extends XResourcesSuperClass {
 	@Override
 	public Drawable getDrawableForDensity(int id, int density) throws NotFoundException {
 		try {
-			if (incrementMethodDepth("getDrawableForDensity") == 1) {
+			if (sGetDrawableForDensityDepth.increment() == 1) {
 				Object replacement = getReplacement(id);
 				if (replacement instanceof DrawableLoader) {
 					try {
@@ -827,7 +793,7 @@ public class XResources extends XResourcesSuperClass {
 			}
 			return super.getDrawableForDensity(id, density);
 		} finally {
-			decrementMethodDepth("getDrawableForDensity");
+			sGetDrawableForDensityDepth.decrement();
 		}
 	}
 
@@ -835,7 +801,7 @@ public class XResources extends XResourcesSuperClass {
 	@Override
 	public Drawable getDrawableForDensity(int id, int density, Theme theme) throws NotFoundException {
 		try {
-			if (incrementMethodDepth("getDrawableForDensity") == 1) {
+			if (sGetDrawableForDensityDepth.increment() == 1) {
 				Object replacement = getReplacement(id);
 				if (replacement instanceof DrawableLoader) {
 					try {
@@ -853,7 +819,7 @@ public class XResources extends XResourcesSuperClass {
 			}
 			return super.getDrawableForDensity(id, density, theme);
 		} finally {
-			decrementMethodDepth("getDrawableForDensity");
+			sGetDrawableForDensityDepth.decrement();
 		}
 	}
 
@@ -946,18 +912,9 @@ public class XResources extends XResourcesSuperClass {
 			result = super.getLayout(id);
 		}
 
-		// Check whether this layout is hooked
-		HashMap<String, CopyOnWriteSortedSet<XC_LayoutInflated>> inner;
-		synchronized (sLayoutCallbacks) {
-			inner = sLayoutCallbacks.get(id);
-		}
-		if (inner != null) {
-			CopyOnWriteSortedSet<XC_LayoutInflated> callbacks;
-			synchronized (inner) {
-				callbacks = inner.get(mResDir);
-				if (callbacks == null && mResDir != null)
-					callbacks = inner.get(null);
-			}
+		// Check whether this layout is hooked, which costs only the check when it isn't
+		if (sLayoutCallbacks.mayContain(id, mResDirId)) {
+			CopyOnWriteSortedSet<XC_LayoutInflated> callbacks = sLayoutCallbacks.get(id, mResDirId);
 			if (callbacks != null) {
 				String variant = "layout";
 				TypedValue value = (TypedValue) getObjectField(this, "mTmpValue");
@@ -973,21 +930,14 @@ public class XResources extends XResourcesSuperClass {
 					XposedBridge.log(new NotFoundException("Could not find file name for resource id 0x") + Integer.toHexString(id));
 				}
 
-				synchronized (sXmlInstanceDetails) {
-					synchronized (sResourceNames) {
-						HashMap<String, ResourceNames> resNamesInner = sResourceNames.get(id);
-						if (resNamesInner != null) {
-							synchronized (resNamesInner) {
-								XMLInstanceDetails details = new XMLInstanceDetails(resNamesInner.get(mResDir), variant, callbacks);
-								sXmlInstanceDetails.put(result, details);
-
-								// if we were called inside LayoutInflater.parseInclude, store the details for it
-								MethodHookParam top = sIncludedLayouts.get().peek();
-								if (top != null)
-									top.setObjectExtra(EXTRA_XML_INSTANCE_DETAILS, details);
-							}
-						}
-					}
+				if (sResourceNames.contains(id)) {
+					XMLInstanceDetails details = new XMLInstanceDetails(sResourceNames.getExact(id, mResDirId), variant, callbacks);
+					sXmlInstanceDetails.put(result, details);
+
+					// if we were called inside LayoutInflater.parseInclude, store the details for it
+					MethodHookParam top = sIncludedLayouts.get().peek();
+					if (top != null)
+						top.setObjectExtra(EXTRA_XML_INSTANCE_DETAILS, details);
 				}
 			}
 		}
@@ -1240,7 +1190,7 @@ public class XResources extends XResourcesSuperClass {
 	public int addResource(Resources res, int id) {
 		int fakeId = getFakeResId(res, id);
 		synchronized (sReplacements) {
-			if (sReplacements.indexOfKey(fakeId) < 0)
+			if (!sReplacements.contains(fakeId))
 				setReplacement(fakeId, new XResForwarder(res, id));
 		}
 		return fakeId;
@@ -1591,6 +1541,186 @@ public class XResources extends XResourcesSuperClass {
 	}
 
 
+	// =======================================================
+	//   ResourceIdTable class
+	// =======================================================
+	/**
+	 * Values by resource ID and resource dir slot, read without locks on every resource fetch.
+	 *
+	 * <p>An open-addressing table of immutable entries, each holding the values of one ID by
+	 * resource dir slot. Changes replace the whole entry, and the table is copied when it grows, so
+	 * readers never see an entry or table that is still being written.
+	 *
+	 * <p>In front of it, {@link #mayContain} checks sorted arrays of the IDs that have values.
+	 * A resource ID is a 32 bit number of the form PPTTNNNN, where PP is the package the resource is
+	 * for, which is always 0x7f for applications. Application IDs are kept per resource dir slot, so
+	 * the check is exact for them. Framework IDs are kept once for all slots, so an ID with a value
+	 * only for other resource dirs passes the check without finding one.
+	 */
+	private static final class ResourceIdTable<V> {
+		private static final int[] NO_IDS = new int[0];
+
+		private static final class Entry {
+			final int id;
+			final Object[] values;
+
+			Entry(int id, Object[] values) {
+				this.id = id;
+				this.values = values;
+			}
+		}
+
+		private volatile AtomicReferenceArray<Entry> mEntries;
+		private int mSize;
+		private volatile int[] mSystemIds = NO_IDS;
+		// by resource dir slot, null for slots without values
+		private volatile int[][] mAppIds = new int[0][];
+
+		ResourceIdTable(int capacity) {
+			mEntries = new AtomicReferenceArray<>(capacity);
+		}
+
+		private static int[] withId(int[] ids, int id) {
+			int index = Arrays.binarySearch(ids, id);
+			if (index >= 0)
+				return ids;
+			index = -index - 1;
+			int[] result = new int[ids.length + 1];
+			System.arraycopy(ids, 0, result, 0, index);
+			result[index] = id;
+			System.arraycopy(ids, index, result, index + 1, ids.length - index);
+			return result;
+		}
+
+		/** Whether the ID may have a value for the resource dir slot, without false negatives. */
+		boolean mayContain(int id, int resDirId) {
+			if (id < 0x7f000000)
+				return Arrays.binarySearch(mSystemIds, id) >= 0;
+			int[][] appIds = mAppIds;
+			int[] ids = resDirId < appIds.length ? appIds[resDirId] : null;
+			return ids != null && Arrays.binarySearch(ids, id) >= 0;
+		}
+
+		private static int indexFor(int id, int mask) {
+			int hash = id * 0x9e3779b9;
+			return (hash ^ (hash >>> 16)) & mask;
+		}
+
+		private static Entry find(AtomicReferenceArray<Entry> entries, int id) {
+			int mask = entries.length() - 1;
+			for (int i = indexFor(id, mask); ; i = (i + 1) & mask) {
+				Entry entry = entries.get(i);
+				if (entry == null || entry.id == id)
+					return entry;
+			}
+		}
+
+		/** The value for the resource dir slot, falling back to the system-wide one. */
+		@SuppressWarnings("unchecked")
+		V get(int id, int resDirId) {
+			Entry entry = find(mEntries, id);
+			if (entry == null)
+				return null;
+			Object[] values = entry.values;
+			Object result = resDirId < values.length ? values[resDirId] : null;
+			if (result != null || resDirId == 0)
+				return (V) result;
+			return (V) values[0];
+		}
+
+		/** The value for the resource dir slot only. */
+		@SuppressWarnings("unchecked")
+		V getExact(int id, int resDirId) {
+			Entry entry = find(mEntries, id);
+			if (entry == null || resDirId >= entry.values.length)
+				return null;
+			return (V) entry.values[resDirId];
+		}
+
+		boolean contains(int id) {
+			return find(mEntries, id) != null;
+		}
+
+		synchronized V computeIfAbsent(int id, int resDirId, Supplier<V> supplier) {
+			V value = getExact(id, resDirId);
+			if (value == null) {
+				value = supplier.get();
+				put(id, resDirId, value);
+			}
+			return value;
+		}
+
+		synchronized void put(int id, int resDirId, V value) {
+			AtomicReferenceArray<Entry> entries = mEntries;
+			int mask = entries.length() - 1;
+			int i = indexFor(id, mask);
+			Entry entry;
+			while ((entry = entries.get(i)) != null && entry.id != id)
+				i = (i + 1) & mask;
+
+			Object[] values;
+			if (entry == null) {
+				values = new Object[resDirId + 1];
+			} else {
+				values = Arrays.copyOf(entry.values, Math.max(entry.values.length, resDirId + 1));
+			}
+			values[resDirId] = value;
+			entries.set(i, new Entry(id, values));
+
+			// published after the entry, so that a passing check always finds it
+			if (id < 0x7f000000) {
+				mSystemIds = withId(mSystemIds, id);
+			} else {
+				int[][] appIds = mAppIds;
+				if (resDirId >= appIds.length)
+					appIds = Arrays.copyOf(appIds, resDirId + 1);
+				else
+					appIds = appIds.clone();
+				appIds[resDirId] = withId(appIds[resDirId] == null ? NO_IDS : appIds[resDirId], id);
+				mAppIds = appIds;
+			}
+
+			if (entry == null && ++mSize * 2 > entries.length())
+				grow();
+		}
+
+		synchronized void removeAll(int resDirId) {
+			int[][] appIds = mAppIds;
+			if (resDirId < appIds.length && appIds[resDirId] != null) {
+				appIds = appIds.clone();
+				appIds[resDirId] = null;
+				mAppIds = appIds;
+			}
+
+			AtomicReferenceArray<Entry> entries = mEntries;
+			for (int i = 0; i < entries.length(); i++) {
+				Entry entry = entries.get(i);
+				if (entry == null || resDirId >= entry.values.length || entry.values[resDirId] == null)
+					continue;
+				// the ID stays in the table, which is fine as entries without values are never removed
+				Object[] values = entry.values.clone();
+				values[resDirId] = null;
+				entries.set(i, new Entry(entry.id, values));
+			}
+		}
+
+		private void grow() {
+			AtomicReferenceArray<Entry> entries = mEntries;
+			AtomicReferenceArray<Entry> grown = new AtomicReferenceArray<>(entries.length() * 2);
+			int mask = grown.length() - 1;
+			for (int i = 0; i < entries.length(); i++) {
+				Entry entry = entries.get(i);
+				if (entry == null)
+					continue;
+				int j = indexFor(entry.id, mask);
+				while (grown.get(j) != null)
+					j = (j + 1) & mask;
+				grown.set(j, entry);
+			}
+			mEntries = grown;
+		}
+	}
+
 	// =======================================================
 	//   DimensionReplacement class
 	// =======================================================
@@ -1771,47 +1901,19 @@ public class XResources extends XResourcesSuperClass {
 			}
 		}
 
-		HashMap<String, CopyOnWriteSortedSet<XC_LayoutInflated>> inner;
-		synchronized (sLayoutCallbacks) {
-			inner = sLayoutCallbacks.get(id);
-			if (inner == null) {
-				inner = new HashMap<>();
-				sLayoutCallbacks.put(id, inner);
-			}
-		}
-
-		CopyOnWriteSortedSet<XC_LayoutInflated> callbacks;
-		synchronized (inner) {
-			callbacks = inner.get(resDir);
-			if (callbacks == null) {
-				callbacks = new CopyOnWriteSortedSet<>();
-				inner.put(resDir, callbacks);
-			}
-		}
+		// names first, so that an inflation that sees the callbacks also sees the names
+		putResourceNames(resDir, resNames);
 
+		CopyOnWriteSortedSet<XC_LayoutInflated> callbacks = sLayoutCallbacks.computeIfAbsent(id, getResDirId(resDir), CopyOnWriteSortedSet::new);
 		callbacks.add(callback);
 
-		putResourceNames(resDir, resNames);
-
 		return callback.new Unhook(resDir, id);
 	}
 
 	/** @hide */
 	public static void unhookLayout(String resDir, int id, XC_LayoutInflated callback) {
-		HashMap<String, CopyOnWriteSortedSet<XC_LayoutInflated>> inner;
-		synchronized (sLayoutCallbacks) {
-			inner = sLayoutCallbacks.get(id);
-			if (inner == null)
-				return;
-		}
-
-		CopyOnWriteSortedSet<XC_LayoutInflated> callbacks;
-		synchronized (inner) {
-			callbacks = inner.get(resDir);
-			if (callbacks == null)
-				return;
-		}
-
-		callbacks.remove(callback);
+		CopyOnWriteSortedSet<XC_LayoutInflated> callbacks = sLayoutCallbacks.getExact(id, getResDirId(resDir));
+		if (callbacks != null)
+			callbacks.remove(callback);
 	}
 }
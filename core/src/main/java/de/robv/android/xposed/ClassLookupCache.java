@@ -0,0 +1,154 @@
+package de.robv.android.xposed;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.lsposed.lspd.util.ConcurrentWeakIdentityMap;
+import org.lsposed.lspd.util.Utils;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dalvik.system.BaseDexClassLoader;
+import dalvik.system.DelegateLastClassLoader;
+import dalvik.system.DexClassLoader;
+import dalvik.system.InMemoryDexClassLoader;
+import dalvik.system.PathClassLoader;
+
+/**
+ * Results of {@link XposedHelpers#findClass} per class loader, including the classes that were
+ * not found.
+ * <p>
+ * Modules probe many class names that only exist in some versions of an app, and every miss
+ * walks all parent loaders and builds a {@link ClassNotFoundException}. Misses are only valid as
+ * long as the dex paths of the loader and its parents stay the same, so they are kept together
+ * with the {@code dexElements} arrays they were looked up against, which are replaced whenever
+ * a dex path is added. That only holds for the stock dex class loaders, so misses are not cached
+ * at all as soon as the chain contains any other loader, e.g. of a plugin or hotfix framework,
+ * or the dex paths can not be observed. Loaders are held weakly, found classes too as they
+ * reference their loader.
+ */
+final class ClassLookupCache {
+    private static final ClassLoader BOOT_CLASS_LOADER = Object.class.getClassLoader();
+    // a cached miss, thrown as a new exception every time
+    private static final Object MISS = new Object();
+
+    private static final ConcurrentWeakIdentityMap<ClassLoader, ClassLookupCache> caches = new ConcurrentWeakIdentityMap<>();
+
+    private static final Field pathListField;
+    private static final Field dexElementsField;
+
+    static {
+        Field pathList = null;
+        Field dexElements = null;
+        try {
+            pathList = BaseDexClassLoader.class.getDeclaredField("pathList");
+            pathList.setAccessible(true);
+            dexElements = pathList.getType().getDeclaredField("dexElements");
+            dexElements.setAccessible(true);
+        } catch (Throwable e) {
+            // misses are then never cached
+            Utils.logW("dex paths of class loaders are not observable", e);
+        }
+        pathListField = pathList;
+        dexElementsField = dexElements;
+    }
+
+    // a WeakReference to the class, or MISS
+    private final ConcurrentHashMap<String, Object> entries = new ConcurrentHashMap<>();
+    // null while the dex paths can not be observed
+    private volatile Object[] dexPaths;
+
+    private ClassLookupCache(ClassLoader classLoader) {
+        dexPaths = dexPathsOf(classLoader);
+    }
+
+    static Class<?> getClass(ClassLoader classLoader, String className) throws ClassNotFoundException {
+        var result = lookup(classLoader, className);
+        if (result == MISS) {
+            throw new CachedClassNotFoundException(className);
+        } else if (result instanceof ClassNotFoundException) {
+            throw (ClassNotFoundException) result;
+        }
+        return (Class<?>) result;
+    }
+
+    static Class<?> getClassIfExists(ClassLoader classLoader, String className) {
+        var result = lookup(classLoader, className);
+        return result instanceof Class ? (Class<?>) result : null;
+    }
+
+    private static Object lookup(ClassLoader classLoader, String className) {
+        return caches.computeIfAbsent(classLoader, ClassLookupCache::new).resolve(classLoader, className);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object resolve(ClassLoader classLoader, String className) {
+        var entry = entries.get(className);
+        if (entry instanceof WeakReference) {
+            var clazz = ((WeakReference<Class<?>>) entry).get();
+            if (clazz != null) return clazz;
+        } else if (entry != null) {
+            var current = dexPathsOf(classLoader);
+            if (current != null && Arrays.equals(current, dexPaths)) return entry;
+            invalidate(current);
+        }
+
+        var before = dexPathsOf(classLoader);
+        try {
+            var clazz = ClassUtils.getClass(classLoader, className, false);
+            entries.put(className, new WeakReference<>(clazz));
+            return clazz;
+        } catch (ClassNotFoundException e) {
+            // a dex path added during the lookup may have made the miss stale already
+            if (before != null && Arrays.equals(before, dexPaths)) {
+                entries.put(className, MISS);
+            }
+            return e;
+        }
+    }
+
+    private synchronized void invalidate(Object[] current) {
+        if (current != null && Arrays.equals(current, dexPaths)) return;
+        entries.values().removeIf(entry -> entry == MISS);
+        dexPaths = current;
+    }
+
+    private static boolean isStockDexClassLoader(ClassLoader loader) {
+        var type = loader.getClass();
+        return type == PathClassLoader.class || type == DexClassLoader.class
+                || type == InMemoryDexClassLoader.class || type == DelegateLastClassLoader.class
+                || type == BaseDexClassLoader.class;
+    }
+
+    // the dexElements arrays of the loader and its parents, compared by identity, or null if
+    // they can not be observed or some loader of the chain may find classes elsewhere
+    private static Object[] dexPathsOf(ClassLoader classLoader) {
+        if (dexElementsField == null) return null;
+        var dexPaths = new ArrayList<>(4);
+        for (var loader = classLoader; loader != null; loader = loader.getParent()) {
+            if (loader == BOOT_CLASS_LOADER) continue;
+            if (!isStockDexClassLoader(loader)) return null;
+            try {
+                var pathList = pathListField.get(loader);
+                dexPaths.add(pathList == null ? null : dexElementsField.get(pathList));
+            } catch (IllegalAccessException e) {
+                return null;
+            }
+        }
+        return dexPaths.toArray();
+    }
+
+    // a miss that was cached, without the cost of a stack trace
+    private static final class CachedClassNotFoundException extends ClassNotFoundException {
+        CachedClassNotFoundException(String className) {
+            super(className);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package de.robv.android.xposed;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Reads and writes one field, obtained once through {@link XposedHelpers#accessor} and kept by
+ * the caller, so that each access skips the member lookup of {@link XposedHelpers#getObjectField}
+ * and friends.
+ * <p>
+ * Accesses of the declared type of the field go through method handles, which are checked once
+ * when the accessor is created instead of on every call like {@link Field#getInt}. Conversions
+ * such as reading an {@code int} field with {@link #getLong} fall back to the reflective methods
+ * of {@link Field}, as do accessors of fields the runtime cannot create handles for. Errors are
+ * the same as for the reflective methods.
+ */
+public final class FieldAccessor {
+    private final Field field;
+    private final Class<?> type;
+    // (Object)type, or (Object)Object for references; null if only reflection works
+    private final MethodHandle getter;
+    // (Object, type)void, or (Object, Object)void for references; null if only reflection works
+    private final MethodHandle setter;
+
+    FieldAccessor(Field field) {
+        this.field = field;
+        this.type = field.getType();
+        var exactType = type.isPrimitive() ? type : Object.class;
+        var isStatic = Modifier.isStatic(field.getModifiers());
+        var lookup = MethodHandles.lookup();
+        MethodHandle getter;
+        try {
+            getter = lookup.unreflectGetter(field);
+            if (isStatic) getter = MethodHandles.dropArguments(getter, 0, Object.class);
+            getter = getter.asType(MethodType.methodType(exactType, Object.class));
+        } catch (Throwable t) {
+            getter = null;
+        }
+        MethodHandle setter;
+        try {
+            // final fields are rejected by some runtimes, while Field.set still writes them
+            setter = lookup.unreflectSetter(field);
+            if (isStatic) setter = MethodHandles.dropArguments(setter, 0, Object.class);
+            setter = setter.asType(MethodType.methodType(void.class, Object.class, exactType));
+        } catch (Throwable t) {
+            setter = null;
+        }
+        this.getter = getter;
+        this.setter = setter;
+    }
+
+    /**
+     * The field this accessor reads and writes, set to accessible.
+     */
+    public Field getField() {
+        return field;
+    }
+
+    private RuntimeException rethrow(Throwable t) {
+        // casts of the receiver or the value are what reflection reports as illegal arguments
+        if (t instanceof ClassCastException) {
+            var exception = new IllegalArgumentException("Cannot access " + field + ": " + t.getMessage());
+            exception.initCause(t);
+            return exception;
+        }
+        if (t instanceof RuntimeException) return (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        return new IllegalStateException(t);
+    }
+
+    private static IllegalAccessError accessError(IllegalAccessException e) {
+        // should not happen
+        XposedBridge.log(e);
+        return new IllegalAccessError(e.getMessage());
+    }
+
+    /**
+     * Returns the value of the field in {@code obj}, boxed for primitive fields. {@code obj} is
+     * ignored for static fields.
+     */
+    public Object get(Object obj) {
+        if (getter != null && !type.isPrimitive()) {
+            try {
+                return (Object) getter.invokeExact(obj);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        try {
+            return field.get(obj);
+        } catch (IllegalAccessException e) {
+            throw accessError(e);
+        }
+    }
+
+    /**
+     * Sets the value of the field in {@code obj}, unboxed for primitive fields. {@code obj} is
+     * ignored for static fields.
+     */
+    public void set(Object obj, Object value) {
+        if (setter != null && !type.isPrimitive()) {
+            try {
+                setter.invokeExact(obj, value);
+                return;
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        try {
+            field.set(obj, value);
+        } catch (IllegalAccessException e) {
+            throw accessError(e);
+        }
+    }
+
+    /**
+     * Returns the value of a {@code boolean} field in {@code obj}, see {@link Field#getBoolean}.
+     */
+    public boolean getBoolean(Object obj) {
+        if (type == boolean.class && getter != null) {
+            try {
+                return (boolean) getter.invokeExact(obj);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        try {
+            return field.getBoolean(obj);
+        } catch (IllegalAccessException e) {
+            throw accessError(e);
+        }
+    }
+
+    /**
+     * Sets the value of a {@code boolean} field in {@code obj}, see {@link Field#setBoolean}.
+     */
+    public void setBoolean(Object obj, boolean value) {
+        if (type == boolean.class && setter != null) {
+            try {
+                setter.invokeExact(obj, value);
+                return;
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        try {
+            field.setBoolean(obj, value);
+        } catch (IllegalAccessException e) {
+            throw accessError(e);
+        }
+    }
+
+    /**
+     * Returns the value of a {@code byte} field in {@code obj}, see {@link Field#getByte}.
+     */
+    public byte getByte(Object obj) {
+        if (type == byte.class && getter != null) {
+            try {
+                return (byte) getter.invokeExact(obj);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        try {
+            return field.getByte(obj);
+        } catch (IllegalAccessException e) {
+            throw accessError(e);
+        }
+    }
+
+    /**
+     * Sets the value of a {@code byte} field in {@code obj}, see {@link Field#setByte}.
+     */
+    public void setByte(Object obj, byte value) {
+        if (type == byte.class && setter != null) {
+            try {
+                setter.invokeExact(obj, value);
+                return;
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        try {
+            field.setByte(obj, value);
+        } catch (IllegalAccessException e) {
+            throw accessError(e);
+        }
+    }
+
+    /**
+     * Returns the value of a {@code char} field in {@code obj}, see {@link Field#getChar}.
+     */
+    public char getChar(Object obj) {
+        if (type == char.class && getter != null) {
+            try {
+                return (char) getter.invokeExact(obj);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        try {
+            return field.getChar(obj);
+        } catch (IllegalAccessException e) {
+            throw accessError(e);
+        }
+    }
+
+    /**
+     * Sets the value of a {@code char} field in {@code obj}, see {@link Field#setChar}.
+     */
+    public void setChar(Object obj, char value) {
+        if (type == char.class && setter != null) {
+            try {
+                setter.invokeExact(obj, value);
+                return;
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        try {
+            field.setChar(obj, value);
+        } catch (IllegalAccessException e) {
+            throw accessError(e);
+        }
+    }
+
+    /**
+     * Returns the value of a {@code double} field in {@code obj}, see {@link Field#getDouble}.
+     */
+    public double getDouble(Object obj) {
+        if (type == double.class && getter != null) {
+            try {
+                return (double) getter.invokeExact(obj);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        try {
+            return field.getDouble(obj);
+        } catch (IllegalAccessException e) {
+            throw accessError(e);
+        }
+    }
+
+    /**
+     * Sets the value of a {@code double} field in {@code obj}, see {@link Field#setDouble}.
+     */
+    public void setDouble(Object obj, double value) {
+        if (type == double.class && setter != null) {
+            try {
+                setter.invokeExact(obj, value);
+                return;
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        try {
+            field.setDouble(obj, value);
+        } catch (IllegalAccessException e) {
+            throw accessError(e);
+        }
+    }
+
+    /**
+     * Returns the value of a {@code float} field in {@code obj}, see {@link Field#getFloat}.
+     */
+    public float getFloat(Object obj) {
+        if (type == float.class && getter != null) {
+            try {
+                return (float) getter.invokeExact(obj);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        try {
+            return field.getFloat(obj);
+        } catch (IllegalAccessException e) {
+            throw accessError(e);
+        }
+    }
+
+    /**
+     * Sets the value of a {@code float} field in {@code obj}, see {@link Field#setFloat}.
+     */
+    public void setFloat(Object obj, float value) {
+        if (type == float.class && setter != null) {
+            try {
+                setter.invokeExact(obj, value);
+                return;
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        try {
+            field.setFloat(obj, value);
+        } catch (IllegalAccessException e) {
+            throw accessError(e);
+        }
+    }
+
+    /**
+     * Returns the value of an {@code int} field in {@code obj}, see {@link Field#getInt}.
+     */
+    public int getInt(Object obj) {
+        if (type == int.class && getter != null) {
+            try {
+                return (int) getter.invokeExact(obj);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        try {
+            return field.getInt(obj);
+        } catch (IllegalAccessException e) {
+            throw accessError(e);
+        }
+    }
+
+    /**
+     * Sets the value of an {@code int} field in {@code obj}, see {@link Field#setInt}.
+     */
+    public void setInt(Object obj, int value) {
+        if (type == int.class && setter != null) {
+            try {
+                setter.invokeExact(obj, value);
+                return;
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        try {
+            field.setInt(obj, value);
+        } catch (IllegalAccessException e) {
+            throw accessError(e);
+        }
+    }
+
+    /**
+     * Returns the value of a {@code long} field in {@code obj}, see {@link Field#getLong}.
+     */
+    public long getLong(Object obj) {
+        if (type == long.class && getter != null) {
+            try {
+                return (long) getter.invokeExact(obj);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        try {
+            return field.getLong(obj);
+        } catch (IllegalAccessException e) {
+            throw accessError(e);
+        }
+    }
+
+    /**
+     * Sets the value of a {@code long} field in {@code obj}, see {@link Field#setLong}.
+     */
+    public void setLong(Object obj, long value) {
+        if (type == long.class && setter != null) {
+            try {
+                setter.invokeExact(obj, value);
+                return;
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        try {
+            field.setLong(obj, value);
+        } catch (IllegalAccessException e) {
+            throw accessError(e);
+        }
+    }
+
+    /**
+     * Returns the value of a {@code short} field in {@code obj}, see {@link Field#getShort}.
+     */
+    public short getShort(Object obj) {
+        if (type == short.class && getter != null) {
+            try {
+                return (short) getter.invokeExact(obj);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        try {
+            return field.getShort(obj);
+        } catch (IllegalAccessException e) {
+            throw accessError(e);
+        }
+    }
+
+    /**
+     * Sets the value of a {@code short} field in {@code obj}, see {@link Field#setShort}.
+     */
+    public void setShort(Object obj, short value) {
+        if (type == short.class && setter != null) {
+            try {
+                setter.invokeExact(obj, value);
+                return;
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        try {
+            field.setShort(obj, value);
+        } catch (IllegalAccessException e) {
+            throw accessError(e);
+        }
+    }
+}
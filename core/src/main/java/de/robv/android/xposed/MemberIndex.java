@@ -0,0 +1,131 @@
+package de.robv.android.xposed;
+
+import org.lsposed.lspd.util.ConcurrentWeakIdentityMap;
+
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The declared members of a class, grouped for the lookups of {@link XposedHelpers} and
+ * {@link XposedBridge}.
+ * <p>
+ * {@link Class#getDeclaredMethods()} and friends copy every member on each call, which adds up
+ * when modules search big obfuscated classes by signature. The index copies them once per class,
+ * the first time it is asked for. Classes are held weakly and their index softly, as the members
+ * reference their declaring class.
+ * <p>
+ * The returned arrays are shared and must not be modified.
+ */
+final class MemberIndex {
+    private static final Method[] NO_METHODS = new Method[0];
+    private static final Field[] NO_FIELDS = new Field[0];
+
+    private static final ConcurrentWeakIdentityMap<Class<?>, SoftReference<MemberIndex>> indexes = new ConcurrentWeakIdentityMap<>();
+
+    private final Constructor<?>[] constructors;
+    private final Map<String, Method[]> methodsByName;
+    private final Method[][] methodsByParameterCount;
+    private final Map<Class<?>, Method[]> methodsByReturnType;
+    private final Map<String, Field> fieldsByName;
+    private final Map<Class<?>, Field[]> fieldsByType;
+
+    private MemberIndex(Class<?> clazz) {
+        var methods = clazz.getDeclaredMethods();
+        var fields = clazz.getDeclaredFields();
+        constructors = clazz.getDeclaredConstructors();
+
+        var byName = new HashMap<String, List<Method>>();
+        var byReturnType = new HashMap<Class<?>, List<Method>>();
+        var byParameterCount = new ArrayList<List<Method>>();
+        for (var method : methods) {
+            byName.computeIfAbsent(method.getName(), k -> new ArrayList<>(1)).add(method);
+            byReturnType.computeIfAbsent(method.getReturnType(), k -> new ArrayList<>()).add(method);
+            int count = method.getParameterCount();
+            while (byParameterCount.size() <= count) byParameterCount.add(new ArrayList<>());
+            byParameterCount.get(count).add(method);
+        }
+        methodsByName = toArrays(byName, NO_METHODS);
+        methodsByReturnType = toArrays(byReturnType, NO_METHODS);
+        methodsByParameterCount = new Method[byParameterCount.size()][];
+        for (int i = 0; i < methodsByParameterCount.length; i++) {
+            methodsByParameterCount[i] = byParameterCount.get(i).toArray(NO_METHODS);
+        }
+
+        fieldsByName = new HashMap<>(fields.length);
+        var byType = new HashMap<Class<?>, List<Field>>();
+        for (var field : fields) {
+            fieldsByName.putIfAbsent(field.getName(), field);
+            byType.computeIfAbsent(field.getType(), k -> new ArrayList<>(1)).add(field);
+        }
+        fieldsByType = toArrays(byType, NO_FIELDS);
+    }
+
+    private static <K, T> Map<K, T[]> toArrays(Map<K, List<T>> lists, T[] empty) {
+        var arrays = new HashMap<K, T[]>(lists.size());
+        for (var entry : lists.entrySet()) {
+            arrays.put(entry.getKey(), entry.getValue().toArray(empty));
+        }
+        return arrays;
+    }
+
+    static MemberIndex of(Class<?> clazz) {
+        var ref = indexes.get(clazz);
+        var index = ref == null ? null : ref.get();
+        if (index == null) {
+            // built outside of any lock, as reflection may load classes; a racing build is only wasted work
+            index = new MemberIndex(clazz);
+            indexes.put(clazz, new SoftReference<>(index));
+        }
+        return index;
+    }
+
+    Constructor<?>[] constructors() {
+        return constructors;
+    }
+
+    Method[] methodsNamed(String name) {
+        var methods = methodsByName.get(name);
+        return methods == null ? NO_METHODS : methods;
+    }
+
+    Method[] methodsWithParameterCount(int count) {
+        return count < methodsByParameterCount.length ? methodsByParameterCount[count] : NO_METHODS;
+    }
+
+    Method[] methodsReturning(Class<?> type) {
+        var methods = methodsByReturnType.get(type);
+        return methods == null ? NO_METHODS : methods;
+    }
+
+    Field[] fieldsOfType(Class<?> type) {
+        var fields = fieldsByType.get(type);
+        return fields == null ? NO_FIELDS : fields;
+    }
+
+    Field field(String name) {
+        return fieldsByName.get(name);
+    }
+
+    /**
+     * Like {@link Class#getDeclaredMethod}, but returns {@code null} instead of throwing. Among
+     * methods with the same parameters, the one that is not synthetic wins over bridges.
+     */
+    Method method(String name, Class<?>[] parameterTypes) {
+        if (parameterTypes == null) parameterTypes = new Class<?>[0];
+        Method result = null;
+        for (var method : methodsNamed(name)) {
+            if (method.getParameterCount() != parameterTypes.length) continue;
+            if (!Arrays.equals(method.getParameterTypes(), parameterTypes)) continue;
+            if (!method.isSynthetic()) return method;
+            if (result == null) result = method;
+        }
+        return result;
+    }
+}
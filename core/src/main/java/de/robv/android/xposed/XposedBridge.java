@@ -25,11 +25,13 @@ import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.util.Log;
 
+import org.lsposed.lspd.impl.HookMetrics;
 import org.lsposed.lspd.impl.LSPosedBridge;
 import org.lsposed.lspd.impl.LSPosedHookCallback;
 import org.lsposed.lspd.nativebridge.HookBridge;
 import org.lsposed.lspd.nativebridge.ResourcesHook;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Executable;
 import java.lang.reflect.InvocationTargetException;
@@ -193,6 +195,21 @@ public final class XposedBridge {
      * @see #hookAllConstructors
      */
     public static XC_MethodHook.Unhook hookMethod(Member hookMethod, XC_MethodHook callback) {
+        checkHookTarget(hookMethod);
+
+        if (callback == null) {
+            throw new IllegalArgumentException("callback should not be null!");
+        }
+
+        if (!HookBridge.hookMethod(false, (Executable) hookMethod, callback.priority, callback)) {
+            log("Failed to hook " + hookMethod);
+            return null;
+        }
+
+        return callback.new Unhook(hookMethod);
+    }
+
+    private static void checkHookTarget(Member hookMethod) {
         if (!(hookMethod instanceof Executable)) {
             throw new IllegalArgumentException("Only methods and constructors can be hooked: " + hookMethod);
         } else if (Modifier.isAbstract(hookMethod.getModifiers())) {
@@ -201,18 +218,40 @@ public final class XposedBridge {
             throw new IllegalArgumentException("Do not allow hooking inner methods");
         } else if (hookMethod.getDeclaringClass() == Method.class && hookMethod.getName().equals("invoke")) {
             throw new IllegalArgumentException("Cannot hook Method.invoke");
+        } else if (hookMethod.getDeclaringClass() == MethodHandle.class && hookMethod.getName().startsWith("invoke")) {
+            throw new IllegalArgumentException("Cannot hook MethodHandle.invoke");
         }
+    }
 
+    /**
+     * Hooks several methods (or constructors) with the same callback at once. This is cheaper than
+     * calling {@link #hookMethod} for each of them, as the callback is validated and the native
+     * hooker is resolved only once.
+     *
+     * @param hookMethods The methods to be hooked.
+     * @param callback    The callback to be executed when the hooked methods are called.
+     * @return A set containing one object for each successfully hooked method which can be used to unhook it.
+     */
+    public static Set<XC_MethodHook.Unhook> hookMethods(Member[] hookMethods, XC_MethodHook callback) {
         if (callback == null) {
             throw new IllegalArgumentException("callback should not be null!");
         }
-
-        if (!HookBridge.hookMethod(false, (Executable) hookMethod, LSPosedBridge.NativeHooker.class, callback.priority, callback)) {
-            log("Failed to hook " + hookMethod);
-            return null;
+        var executables = new Executable[hookMethods.length];
+        for (int i = 0; i < hookMethods.length; i++) {
+            checkHookTarget(hookMethods[i]);
+            executables[i] = (Executable) hookMethods[i];
         }
 
-        return callback.new Unhook(hookMethod);
+        var results = HookBridge.hookMethods(false, executables, callback.priority, callback);
+        Set<XC_MethodHook.Unhook> unhooks = new HashSet<>();
+        for (int i = 0; i < hookMethods.length; i++) {
+            if (results[i]) {
+                unhooks.add(callback.new Unhook(hookMethods[i]));
+            } else {
+                log("Failed to hook " + hookMethods[i]);
+            }
+        }
+        return unhooks;
     }
 
     /**
@@ -242,11 +281,7 @@ public final class XposedBridge {
      */
     @SuppressWarnings("UnusedReturnValue")
     public static Set<XC_MethodHook.Unhook> hookAllMethods(Class<?> hookClass, String methodName, XC_MethodHook callback) {
-        Set<XC_MethodHook.Unhook> unhooks = new HashSet<>();
-        for (Member method : hookClass.getDeclaredMethods())
-            if (method.getName().equals(methodName))
-                unhooks.add(hookMethod(method, callback));
-        return unhooks;
+        return hookMethods(MemberIndex.of(hookClass).methodsNamed(methodName), callback);
     }
 
     /**
@@ -258,10 +293,7 @@ public final class XposedBridge {
      */
     @SuppressWarnings("UnusedReturnValue")
     public static Set<XC_MethodHook.Unhook> hookAllConstructors(Class<?> hookClass, XC_MethodHook callback) {
-        Set<XC_MethodHook.Unhook> unhooks = new HashSet<>();
-        for (Member constructor : hookClass.getDeclaredConstructors())
-            unhooks.add(hookMethod(constructor, callback));
-        return unhooks;
+        return hookMethods(MemberIndex.of(hookClass).constructors(), callback);
     }
 
     /**
@@ -325,7 +357,8 @@ public final class XposedBridge {
             throw new IllegalArgumentException("method must be of type Method or Constructor");
         }
 
-        return HookBridge.invokeOriginalMethod((Executable) method, thisObject, args);
+        var returnType = method instanceof Method ? ((Method) method).getReturnType() : null;
+        return LSPosedBridge.invokeOriginal((Executable) method, returnType, true, thisObject, args);
     }
 
     /**
@@ -384,23 +417,32 @@ public final class XposedBridge {
     }
 
     public static class LegacyApiSupport<T extends Executable> {
-        private final XC_MethodHook.MethodHookParam<T> param;
-        private final LSPosedHookCallback<T> callback;
-        private final Object[] snapshot;
+        private XC_MethodHook.MethodHookParam<T> param;
+        private Object[] snapshot;
+        private HookMetrics.MethodMetrics metrics;
 
         private int beforeIdx;
 
-        public LegacyApiSupport(LSPosedHookCallback<T> callback, Object[] legacySnapshot) {
-            this.param = new XC_MethodHook.MethodHookParam<>();
-            this.callback = callback;
+        public void init(LSPosedHookCallback<T> callback, Object[] legacySnapshot, HookMetrics.MethodMetrics metrics) {
+            // legacy callbacks operate directly on the state of the modern callback
+            this.param = callback.param;
             this.snapshot = legacySnapshot;
+            this.metrics = metrics;
+        }
+
+        public void reset() {
+            param = null;
+            snapshot = null;
+            metrics = null;
+            beforeIdx = 0;
         }
 
         public void handleBefore() {
-            syncronizeApi(param, callback, true);
+            long start = 0;
             for (beforeIdx = 0; beforeIdx < snapshot.length; beforeIdx++) {
+                var cb = (XC_MethodHook) snapshot[beforeIdx];
+                if (metrics != null) start = System.nanoTime();
                 try {
-                    var cb = (XC_MethodHook) snapshot[beforeIdx];
                     cb.beforeHookedMethod(param);
                 } catch (Throwable t) {
                     XposedBridge.log(t);
@@ -409,6 +451,8 @@ public final class XposedBridge {
                     param.setResult(null);
                     param.returnEarly = false;
                     continue;
+                } finally {
+                    if (metrics != null) metrics.recordBefore(cb, System.nanoTime() - start);
                 }
 
                 if (param.returnEarly) {
@@ -417,16 +461,16 @@ public final class XposedBridge {
                     break;
                 }
             }
-            syncronizeApi(param, callback, false);
         }
 
         public void handleAfter() {
-            syncronizeApi(param, callback, true);
+            long start = 0;
             for (int afterIdx = beforeIdx - 1; afterIdx >= 0; afterIdx--) {
                 Object lastResult = param.getResult();
                 Throwable lastThrowable = param.getThrowable();
+                var cb = (XC_MethodHook) snapshot[afterIdx];
+                if (metrics != null) start = System.nanoTime();
                 try {
-                    var cb = (XC_MethodHook) snapshot[afterIdx];
                     cb.afterHookedMethod(param);
                 } catch (Throwable t) {
                     XposedBridge.log(t);
@@ -438,25 +482,7 @@ public final class XposedBridge {
                         param.setThrowable(lastThrowable);
                     }
                 }
-            }
-            syncronizeApi(param, callback, false);
-        }
-
-        private void syncronizeApi(XC_MethodHook.MethodHookParam<T> param, LSPosedHookCallback<T> callback, boolean forward) {
-            if (forward) {
-                param.method = callback.method;
-                param.thisObject = callback.thisObject;
-                param.args = callback.args;
-                param.result = callback.result;
-                param.throwable = callback.throwable;
-                param.returnEarly = callback.isSkipped;
-            } else {
-                callback.method = param.method;
-                callback.thisObject = param.thisObject;
-                callback.args = param.args;
-                callback.result = param.result;
-                callback.throwable = param.throwable;
-                callback.isSkipped = param.returnEarly;
+                if (metrics != null) metrics.recordAfter(cb, System.nanoTime() - start);
             }
         }
     }
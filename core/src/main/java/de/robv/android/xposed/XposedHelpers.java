@@ -28,11 +28,13 @@ import androidx.annotation.Nullable;
 
 import org.apache.commons.lang3.ClassUtils;
 import org.apache.commons.lang3.reflect.MemberUtilsX;
+import org.lsposed.lspd.util.ConcurrentWeakIdentityMap;
 
 import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
@@ -42,13 +44,11 @@ import java.lang.reflect.Modifier;
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -62,8 +62,9 @@ public final class XposedHelpers {
     private static final ConcurrentHashMap<MemberCacheKey.Field, Optional<Field>> fieldCache = new ConcurrentHashMap<>();
     private static final ConcurrentHashMap<MemberCacheKey.Method, Optional<Method>> methodCache = new ConcurrentHashMap<>();
     private static final ConcurrentHashMap<MemberCacheKey.Constructor, Optional<Constructor<?>>> constructorCache = new ConcurrentHashMap<>();
-    private static final WeakHashMap<Object, HashMap<String, Object>> additionalFields = new WeakHashMap<>();
-    private static final HashMap<String, ThreadLocal<AtomicInteger>> sMethodDepth = new HashMap<>();
+    private static final ConcurrentHashMap<Field, FieldAccessor> fieldAccessors = new ConcurrentHashMap<>();
+    private static final CachedAccessor[] accessorCache = new CachedAccessor[256];
+    private static final ConcurrentWeakIdentityMap<Object, ConcurrentHashMap<String, Object>> additionalFields = new ConcurrentWeakIdentityMap<>();
 
     /**
      * Note that we use object key instead of string here, because string calculation will lose all
@@ -202,7 +203,7 @@ public final class XposedHelpers {
         if (classLoader == null)
             classLoader = XposedBridge.BOOTCLASSLOADER;
         try {
-            return ClassUtils.getClass(classLoader, className, false);
+            return ClassLookupCache.getClass(classLoader, className);
         } catch (ClassNotFoundException e) {
             throw new ClassNotFoundError(e);
         }
@@ -217,11 +218,9 @@ public final class XposedHelpers {
      * @return A reference to the class, or {@code null} if it doesn't exist.
      */
     public static Class<?> findClassIfExists(String className, ClassLoader classLoader) {
-        try {
-            return findClass(className, classLoader);
-        } catch (ClassNotFoundError e) {
-            return null;
-        }
+        if (classLoader == null)
+            classLoader = XposedBridge.BOOTCLASSLOADER;
+        return ClassLookupCache.getClassIfExists(classLoader, className);
     }
 
     /**
@@ -262,22 +261,65 @@ public final class XposedHelpers {
         }
     }
 
+    /**
+     * Look up a field like {@link #findField} and return an accessor for it. Keep the accessor
+     * instead of passing the field name to {@link #getObjectField} and friends on every access.
+     *
+     * @param clazz     The class which either declares or inherits the field.
+     * @param fieldName The field name.
+     * @return An accessor for the field.
+     * @throws NoSuchFieldError In case the field was not found.
+     */
+    public static FieldAccessor accessor(Class<?> clazz, String fieldName) {
+        return fieldAccessors.computeIfAbsent(findField(clazz, fieldName), FieldAccessor::new);
+    }
+
+    // the looked up class may only inherit the field, so it is held weakly; the accessor itself
+    // is kept by fieldAccessors anyway, like the members in the other caches
+    private static final class CachedAccessor extends WeakReference<Class<?>> {
+        final String name;
+        final FieldAccessor accessor;
+
+        CachedAccessor(Class<?> clazz, String name, FieldAccessor accessor) {
+            super(clazz);
+            this.name = name;
+            this.accessor = accessor;
+        }
+    }
+
+    /**
+     * {@link #accessor}, but from a direct-mapped cache in front of the member cache, so that the
+     * string based field methods skip building a {@link MemberCacheKey.Field}. Field names are
+     * mostly literals, so a hit usually compares the name by identity only.
+     */
+    private static FieldAccessor cachedAccessor(Class<?> clazz, String fieldName) {
+        int hash = 31 * System.identityHashCode(clazz) + fieldName.hashCode();
+        int index = (hash ^ (hash >>> 16)) & (accessorCache.length - 1);
+        var cached = accessorCache[index];
+        if (cached != null && cached.get() == clazz && (cached.name == fieldName || cached.name.equals(fieldName))) {
+            return cached.accessor;
+        }
+        var accessor = accessor(clazz, fieldName);
+        // racing writes only evict each other, entries are immutable
+        accessorCache[index] = new CachedAccessor(clazz, fieldName, accessor);
+        return accessor;
+    }
+
     private static Field findFieldRecursiveImpl(Class<?> clazz, String fieldName) throws NoSuchFieldException {
-        try {
-            return clazz.getDeclaredField(fieldName);
-        } catch (NoSuchFieldException e) {
-            while (true) {
-                clazz = clazz.getSuperclass();
-                if (clazz == null || clazz.equals(Object.class))
-                    break;
+        var field = MemberIndex.of(clazz).field(fieldName);
+        if (field != null)
+            return field;
 
-                try {
-                    return clazz.getDeclaredField(fieldName);
-                } catch (NoSuchFieldException ignored) {
-                }
-            }
-            throw e;
+        while (true) {
+            clazz = clazz.getSuperclass();
+            if (clazz == null || clazz.equals(Object.class))
+                break;
+
+            field = MemberIndex.of(clazz).field(fieldName);
+            if (field != null)
+                return field;
         }
+        throw new NoSuchFieldException(fieldName);
     }
 
     /**
@@ -292,11 +334,10 @@ public final class XposedHelpers {
     public static Field findFirstFieldByExactType(Class<?> clazz, Class<?> type) {
         Class<?> clz = clazz;
         do {
-            for (Field field : clz.getDeclaredFields()) {
-                if (field.getType() == type) {
-                    field.setAccessible(true);
-                    return field;
-                }
+            var fields = MemberIndex.of(clz).fieldsOfType(type);
+            if (fields.length > 0) {
+                fields[0].setAccessible(true);
+                return fields[0];
             }
         } while ((clz = clz.getSuperclass()) != null);
 
@@ -458,13 +499,11 @@ public final class XposedHelpers {
         var key = new MemberCacheKey.Method(clazz, methodName, parameterTypes, true);
 
         return methodCache.computeIfAbsent(key, k -> {
-            try {
-                Method method = k.clazz.getDeclaredMethod(k.name, k.parameters);
-                method.setAccessible(true);
-                return Optional.of(method);
-            } catch (NoSuchMethodException e) {
+            Method method = MemberIndex.of(k.clazz).method(k.name, k.parameters);
+            if (method == null)
                 return Optional.empty();
-            }
+            method.setAccessible(true);
+            return Optional.of(method);
         }).orElseThrow(() -> new NoSuchMethodError(key.toString()));
     }
 
@@ -480,14 +519,14 @@ public final class XposedHelpers {
      * @return An array with matching methods, all set to accessible already.
      */
     public static Method[] findMethodsByExactParameters(Class<?> clazz, Class<?> returnType, Class<?>... parameterTypes) {
-        List<Method> result = new LinkedList<>();
-        for (Method method : clazz.getDeclaredMethods()) {
-            if (returnType != null && returnType != method.getReturnType())
+        List<Method> result = new ArrayList<>();
+        var index = MemberIndex.of(clazz);
+        var candidates = returnType != null ? index.methodsReturning(returnType) : index.methodsWithParameterCount(parameterTypes.length);
+        for (Method method : candidates) {
+            if (parameterTypes.length != method.getParameterCount())
                 continue;
 
             Class<?>[] methodParameterTypes = method.getParameterTypes();
-            if (parameterTypes.length != methodParameterTypes.length)
-                continue;
 
             boolean match = true;
             for (int i = 0; i < parameterTypes.length; i++) {
@@ -534,13 +573,13 @@ public final class XposedHelpers {
             Class<?> clz = k.clazz;
             boolean considerPrivateMethods = true;
             do {
-                for (Method method : clz.getDeclaredMethods()) {
+                for (Method method : MemberIndex.of(clz).methodsNamed(k.name)) {
                     // don't consider private methods of superclasses
                     if (!considerPrivateMethods && Modifier.isPrivate(method.getModifiers()))
                         continue;
 
-                    // compare name and parameters
-                    if (method.getName().equals(k.name) && ClassUtils.isAssignable(
+                    // compare parameters
+                    if (ClassUtils.isAssignable(
                             k.parameters,
                             method.getParameterTypes(),
                             true)) {
@@ -760,7 +799,7 @@ public final class XposedHelpers {
 
         return constructorCache.computeIfAbsent(key, k -> {
             Constructor<?> bestMatch = null;
-            Constructor<?>[] constructors = k.clazz.getDeclaredConstructors();
+            Constructor<?>[] constructors = MemberIndex.of(k.clazz).constructors();
             for (Constructor<?> constructor : constructors) {
                 // compare name and parameters
                 if (ClassUtils.isAssignable(
@@ -887,135 +926,63 @@ public final class XposedHelpers {
      * Sets the value of an object field in the given object instance. A class reference is not sufficient! See also {@link #findField}.
      */
     public static void setObjectField(Object obj, String fieldName, Object value) {
-        try {
-            findField(obj.getClass(), fieldName).set(obj, value);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        cachedAccessor(obj.getClass(), fieldName).set(obj, value);
     }
 
     /**
      * Sets the value of a {@code boolean} field in the given object instance. A class reference is not sufficient! See also {@link #findField}.
      */
     public static void setBooleanField(Object obj, String fieldName, boolean value) {
-        try {
-            findField(obj.getClass(), fieldName).setBoolean(obj, value);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        cachedAccessor(obj.getClass(), fieldName).setBoolean(obj, value);
     }
 
     /**
      * Sets the value of a {@code byte} field in the given object instance. A class reference is not sufficient! See also {@link #findField}.
      */
     public static void setByteField(Object obj, String fieldName, byte value) {
-        try {
-            findField(obj.getClass(), fieldName).setByte(obj, value);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        cachedAccessor(obj.getClass(), fieldName).setByte(obj, value);
     }
 
     /**
      * Sets the value of a {@code char} field in the given object instance. A class reference is not sufficient! See also {@link #findField}.
      */
     public static void setCharField(Object obj, String fieldName, char value) {
-        try {
-            findField(obj.getClass(), fieldName).setChar(obj, value);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        cachedAccessor(obj.getClass(), fieldName).setChar(obj, value);
     }
 
     /**
      * Sets the value of a {@code double} field in the given object instance. A class reference is not sufficient! See also {@link #findField}.
      */
     public static void setDoubleField(Object obj, String fieldName, double value) {
-        try {
-            findField(obj.getClass(), fieldName).setDouble(obj, value);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        cachedAccessor(obj.getClass(), fieldName).setDouble(obj, value);
     }
 
     /**
      * Sets the value of a {@code float} field in the given object instance. A class reference is not sufficient! See also {@link #findField}.
      */
     public static void setFloatField(Object obj, String fieldName, float value) {
-        try {
-            findField(obj.getClass(), fieldName).setFloat(obj, value);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        cachedAccessor(obj.getClass(), fieldName).setFloat(obj, value);
     }
 
     /**
      * Sets the value of an {@code int} field in the given object instance. A class reference is not sufficient! See also {@link #findField}.
      */
     public static void setIntField(Object obj, String fieldName, int value) {
-        try {
-            findField(obj.getClass(), fieldName).setInt(obj, value);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        cachedAccessor(obj.getClass(), fieldName).setInt(obj, value);
     }
 
     /**
      * Sets the value of a {@code long} field in the given object instance. A class reference is not sufficient! See also {@link #findField}.
      */
     public static void setLongField(Object obj, String fieldName, long value) {
-        try {
-            findField(obj.getClass(), fieldName).setLong(obj, value);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        cachedAccessor(obj.getClass(), fieldName).setLong(obj, value);
     }
 
     /**
      * Sets the value of a {@code short} field in the given object instance. A class reference is not sufficient! See also {@link #findField}.
      */
     public static void setShortField(Object obj, String fieldName, short value) {
-        try {
-            findField(obj.getClass(), fieldName).setShort(obj, value);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        cachedAccessor(obj.getClass(), fieldName).setShort(obj, value);
     }
 
     //#################################################################################################
@@ -1024,15 +991,7 @@ public final class XposedHelpers {
      * Returns the value of an object field in the given object instance. A class reference is not sufficient! See also {@link #findField}.
      */
     public static Object getObjectField(Object obj, String fieldName) {
-        try {
-            return findField(obj.getClass(), fieldName).get(obj);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        return cachedAccessor(obj.getClass(), fieldName).get(obj);
     }
 
     /**
@@ -1047,120 +1006,56 @@ public final class XposedHelpers {
      */
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     public static boolean getBooleanField(Object obj, String fieldName) {
-        try {
-            return findField(obj.getClass(), fieldName).getBoolean(obj);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        return cachedAccessor(obj.getClass(), fieldName).getBoolean(obj);
     }
 
     /**
      * Returns the value of a {@code byte} field in the given object instance. A class reference is not sufficient! See also {@link #findField}.
      */
     public static byte getByteField(Object obj, String fieldName) {
-        try {
-            return findField(obj.getClass(), fieldName).getByte(obj);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        return cachedAccessor(obj.getClass(), fieldName).getByte(obj);
     }
 
     /**
      * Returns the value of a {@code char} field in the given object instance. A class reference is not sufficient! See also {@link #findField}.
      */
     public static char getCharField(Object obj, String fieldName) {
-        try {
-            return findField(obj.getClass(), fieldName).getChar(obj);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        return cachedAccessor(obj.getClass(), fieldName).getChar(obj);
     }
 
     /**
      * Returns the value of a {@code double} field in the given object instance. A class reference is not sufficient! See also {@link #findField}.
      */
     public static double getDoubleField(Object obj, String fieldName) {
-        try {
-            return findField(obj.getClass(), fieldName).getDouble(obj);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        return cachedAccessor(obj.getClass(), fieldName).getDouble(obj);
     }
 
     /**
      * Returns the value of a {@code float} field in the given object instance. A class reference is not sufficient! See also {@link #findField}.
      */
     public static float getFloatField(Object obj, String fieldName) {
-        try {
-            return findField(obj.getClass(), fieldName).getFloat(obj);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        return cachedAccessor(obj.getClass(), fieldName).getFloat(obj);
     }
 
     /**
      * Returns the value of an {@code int} field in the given object instance. A class reference is not sufficient! See also {@link #findField}.
      */
     public static int getIntField(Object obj, String fieldName) {
-        try {
-            return findField(obj.getClass(), fieldName).getInt(obj);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        return cachedAccessor(obj.getClass(), fieldName).getInt(obj);
     }
 
     /**
      * Returns the value of a {@code long} field in the given object instance. A class reference is not sufficient! See also {@link #findField}.
      */
     public static long getLongField(Object obj, String fieldName) {
-        try {
-            return findField(obj.getClass(), fieldName).getLong(obj);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        return cachedAccessor(obj.getClass(), fieldName).getLong(obj);
     }
 
     /**
      * Returns the value of a {@code short} field in the given object instance. A class reference is not sufficient! See also {@link #findField}.
      */
     public static short getShortField(Object obj, String fieldName) {
-        try {
-            return findField(obj.getClass(), fieldName).getShort(obj);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        return cachedAccessor(obj.getClass(), fieldName).getShort(obj);
     }
 
     //#################################################################################################
@@ -1169,135 +1064,63 @@ public final class XposedHelpers {
      * Sets the value of a static object field in the given class. See also {@link #findField}.
      */
     public static void setStaticObjectField(Class<?> clazz, String fieldName, Object value) {
-        try {
-            findField(clazz, fieldName).set(null, value);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        cachedAccessor(clazz, fieldName).set(null, value);
     }
 
     /**
      * Sets the value of a static {@code boolean} field in the given class. See also {@link #findField}.
      */
     public static void setStaticBooleanField(Class<?> clazz, String fieldName, boolean value) {
-        try {
-            findField(clazz, fieldName).setBoolean(null, value);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        cachedAccessor(clazz, fieldName).setBoolean(null, value);
     }
 
     /**
      * Sets the value of a static {@code byte} field in the given class. See also {@link #findField}.
      */
     public static void setStaticByteField(Class<?> clazz, String fieldName, byte value) {
-        try {
-            findField(clazz, fieldName).setByte(null, value);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        cachedAccessor(clazz, fieldName).setByte(null, value);
     }
 
     /**
      * Sets the value of a static {@code char} field in the given class. See also {@link #findField}.
      */
     public static void setStaticCharField(Class<?> clazz, String fieldName, char value) {
-        try {
-            findField(clazz, fieldName).setChar(null, value);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        cachedAccessor(clazz, fieldName).setChar(null, value);
     }
 
     /**
      * Sets the value of a static {@code double} field in the given class. See also {@link #findField}.
      */
     public static void setStaticDoubleField(Class<?> clazz, String fieldName, double value) {
-        try {
-            findField(clazz, fieldName).setDouble(null, value);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        cachedAccessor(clazz, fieldName).setDouble(null, value);
     }
 
     /**
      * Sets the value of a static {@code float} field in the given class. See also {@link #findField}.
      */
     public static void setStaticFloatField(Class<?> clazz, String fieldName, float value) {
-        try {
-            findField(clazz, fieldName).setFloat(null, value);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        cachedAccessor(clazz, fieldName).setFloat(null, value);
     }
 
     /**
      * Sets the value of a static {@code int} field in the given class. See also {@link #findField}.
      */
     public static void setStaticIntField(Class<?> clazz, String fieldName, int value) {
-        try {
-            findField(clazz, fieldName).setInt(null, value);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        cachedAccessor(clazz, fieldName).setInt(null, value);
     }
 
     /**
      * Sets the value of a static {@code long} field in the given class. See also {@link #findField}.
      */
     public static void setStaticLongField(Class<?> clazz, String fieldName, long value) {
-        try {
-            findField(clazz, fieldName).setLong(null, value);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        cachedAccessor(clazz, fieldName).setLong(null, value);
     }
 
     /**
      * Sets the value of a static {@code short} field in the given class. See also {@link #findField}.
      */
     public static void setStaticShortField(Class<?> clazz, String fieldName, short value) {
-        try {
-            findField(clazz, fieldName).setShort(null, value);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        cachedAccessor(clazz, fieldName).setShort(null, value);
     }
 
     //#################################################################################################
@@ -1306,135 +1129,63 @@ public final class XposedHelpers {
      * Returns the value of a static object field in the given class. See also {@link #findField}.
      */
     public static Object getStaticObjectField(Class<?> clazz, String fieldName) {
-        try {
-            return findField(clazz, fieldName).get(null);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        return cachedAccessor(clazz, fieldName).get(null);
     }
 
     /**
      * Returns the value of a static {@code boolean} field in the given class. See also {@link #findField}.
      */
     public static boolean getStaticBooleanField(Class<?> clazz, String fieldName) {
-        try {
-            return findField(clazz, fieldName).getBoolean(null);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        return cachedAccessor(clazz, fieldName).getBoolean(null);
     }
 
     /**
      * Sets the value of a static {@code byte} field in the given class. See also {@link #findField}.
      */
     public static byte getStaticByteField(Class<?> clazz, String fieldName) {
-        try {
-            return findField(clazz, fieldName).getByte(null);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        return cachedAccessor(clazz, fieldName).getByte(null);
     }
 
     /**
      * Sets the value of a static {@code char} field in the given class. See also {@link #findField}.
      */
     public static char getStaticCharField(Class<?> clazz, String fieldName) {
-        try {
-            return findField(clazz, fieldName).getChar(null);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        return cachedAccessor(clazz, fieldName).getChar(null);
     }
 
     /**
      * Sets the value of a static {@code double} field in the given class. See also {@link #findField}.
      */
     public static double getStaticDoubleField(Class<?> clazz, String fieldName) {
-        try {
-            return findField(clazz, fieldName).getDouble(null);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        return cachedAccessor(clazz, fieldName).getDouble(null);
     }
 
     /**
      * Sets the value of a static {@code float} field in the given class. See also {@link #findField}.
      */
     public static float getStaticFloatField(Class<?> clazz, String fieldName) {
-        try {
-            return findField(clazz, fieldName).getFloat(null);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        return cachedAccessor(clazz, fieldName).getFloat(null);
     }
 
     /**
      * Sets the value of a static {@code int} field in the given class. See also {@link #findField}.
      */
     public static int getStaticIntField(Class<?> clazz, String fieldName) {
-        try {
-            return findField(clazz, fieldName).getInt(null);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        return cachedAccessor(clazz, fieldName).getInt(null);
     }
 
     /**
      * Sets the value of a static {@code long} field in the given class. See also {@link #findField}.
      */
     public static long getStaticLongField(Class<?> clazz, String fieldName) {
-        try {
-            return findField(clazz, fieldName).getLong(null);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        return cachedAccessor(clazz, fieldName).getLong(null);
     }
 
     /**
      * Sets the value of a static {@code short} field in the given class. See also {@link #findField}.
      */
     public static short getStaticShortField(Class<?> clazz, String fieldName) {
-        try {
-            return findField(clazz, fieldName).getShort(null);
-        } catch (IllegalAccessException e) {
-            // should not happen
-            XposedBridge.log(e);
-            throw new IllegalAccessError(e.getMessage());
-        } catch (IllegalArgumentException e) {
-            throw e;
-        }
+        return cachedAccessor(clazz, fieldName).getShort(null);
     }
 
     //#################################################################################################
@@ -1615,18 +1366,9 @@ public final class XposedHelpers {
         if (key == null)
             throw new NullPointerException("key must not be null");
 
-        HashMap<String, Object> objectFields;
-        synchronized (additionalFields) {
-            objectFields = additionalFields.get(obj);
-            if (objectFields == null) {
-                objectFields = new HashMap<>();
-                additionalFields.put(obj, objectFields);
-            }
-        }
-
-        synchronized (objectFields) {
-            return objectFields.put(key, value);
-        }
+        var objectFields = additionalFields.computeIfAbsent(obj, o -> new ConcurrentHashMap<>());
+        // ConcurrentHashMap has no null values, storing null is the same as removing for getters
+        return value == null ? objectFields.remove(key) : objectFields.put(key, value);
     }
 
     /**
@@ -1642,16 +1384,8 @@ public final class XposedHelpers {
         if (key == null)
             throw new NullPointerException("key must not be null");
 
-        HashMap<String, Object> objectFields;
-        synchronized (additionalFields) {
-            objectFields = additionalFields.get(obj);
-            if (objectFields == null)
-                return null;
-        }
-
-        synchronized (objectFields) {
-            return objectFields.get(key);
-        }
+        var objectFields = additionalFields.get(obj);
+        return objectFields == null ? null : objectFields.get(key);
     }
 
     /**
@@ -1667,16 +1401,8 @@ public final class XposedHelpers {
         if (key == null)
             throw new NullPointerException("key must not be null");
 
-        HashMap<String, Object> objectFields;
-        synchronized (additionalFields) {
-            objectFields = additionalFields.get(obj);
-            if (objectFields == null)
-                return null;
-        }
-
-        synchronized (objectFields) {
-            return objectFields.remove(key);
-        }
+        var objectFields = additionalFields.get(obj);
+        return objectFields == null ? null : objectFields.remove(key);
     }
 
     /**
@@ -1782,7 +1508,7 @@ public final class XposedHelpers {
      * @return The updated depth.
      */
     public static int incrementMethodDepth(String method) {
-        return getMethodDepthCounter(method).get().incrementAndGet();
+        return MethodDepth.of(method).increment();
     }
 
     /**
@@ -1793,7 +1519,7 @@ public final class XposedHelpers {
      * @return The updated depth.
      */
     public static int decrementMethodDepth(String method) {
-        return getMethodDepthCounter(method).get().decrementAndGet();
+        return MethodDepth.of(method).decrement();
     }
 
     /**
@@ -1804,22 +1530,62 @@ public final class XposedHelpers {
      * @return The updated depth.
      */
     public static int getMethodDepth(String method) {
-        return getMethodDepthCounter(method).get().get();
+        return MethodDepth.of(method).get();
     }
 
-    private static ThreadLocal<AtomicInteger> getMethodDepthCounter(String method) {
-        synchronized (sMethodDepth) {
-            ThreadLocal<AtomicInteger> counter = sMethodDepth.get(method);
-            if (counter == null) {
-                counter = new ThreadLocal<AtomicInteger>() {
-                    @Override
-                    protected AtomicInteger initialValue() {
-                        return new AtomicInteger();
-                    }
-                };
-                sMethodDepth.put(method, counter);
+    /**
+     * A method depth counter resolved once, for callers that would otherwise look up the same name
+     * on every call. Counters of the same name are shared with the string based methods above.
+     * <p>
+     * Each name gets a slot in an {@code int[]} of the calling thread, so neither counting nor
+     * reading locks or allocates once the array of the thread is large enough.
+     *
+     * @hide
+     */
+    public static final class MethodDepth {
+        private static final ConcurrentHashMap<String, MethodDepth> sKeys = new ConcurrentHashMap<>();
+        private static final AtomicInteger sNextSlot = new AtomicInteger();
+        private static final ThreadLocal<int[]> sDepths = ThreadLocal.withInitial(() -> new int[8]);
+
+        private final int slot;
+
+        private MethodDepth(int slot) {
+            this.slot = slot;
+        }
+
+        /**
+         * Returns the counter for the given method name.
+         *
+         * @param method The method name. Should be prefixed with a unique, module-specific string.
+         */
+        public static MethodDepth of(String method) {
+            var key = sKeys.get(method);
+            if (key == null) {
+                key = sKeys.computeIfAbsent(method, k -> new MethodDepth(sNextSlot.getAndIncrement()));
+            }
+            return key;
+        }
+
+        private int[] depths() {
+            var depths = sDepths.get();
+            if (slot >= depths.length) {
+                depths = Arrays.copyOf(depths, Math.max(slot + 1, depths.length * 2));
+                sDepths.set(depths);
             }
-            return counter;
+            return depths;
+        }
+
+        public int increment() {
+            return ++depths()[slot];
+        }
+
+        public int decrement() {
+            return --depths()[slot];
+        }
+
+        public int get() {
+            var depths = sDepths.get();
+            return slot < depths.length ? depths[slot] : 0;
         }
     }
 
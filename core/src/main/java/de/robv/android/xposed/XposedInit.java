@@ -41,6 +41,7 @@ import android.os.Process;
 import android.util.ArrayMap;
 import android.util.Log;
 
+import org.lsposed.lspd.impl.HookMetrics;
 import org.lsposed.lspd.impl.LSPosedContext;
 import org.lsposed.lspd.models.PreLoadedApk;
 import org.lsposed.lspd.nativebridge.NativeAPI;
@@ -224,7 +225,7 @@ public final class XposedInit {
     }
 
     public static void loadLegacyModules() {
-        var moduleList = serviceClient.getLegacyModulesList();
+        var moduleList = serviceClient.loadInjectionBundle();
         moduleList.forEach(module -> {
             var apk = module.apkPath;
             var name = module.packageName;
@@ -324,6 +325,7 @@ public final class XposedInit {
         } catch (ClassNotFoundException ignored) {
             return false;
         }
+        HookMetrics.registerModule(mcl, name);
         initNativeModule(file.moduleLibraryNames);
         return initModule(mcl, apk, file.moduleClassNames);
     }
@@ -26,12 +26,18 @@ import android.os.RemoteException;
 
 import androidx.annotation.NonNull;
 
+import org.lsposed.lspd.models.InjectionBundle;
 import org.lsposed.lspd.models.Module;
 import org.lsposed.lspd.service.ILSPApplicationService;
 import org.lsposed.lspd.util.Utils;
 
+import java.io.File;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ApplicationServiceClient implements ILSPApplicationService, IBinder.DeathRecipient {
     public static ApplicationServiceClient serviceClient = null;
@@ -40,6 +46,13 @@ public class ApplicationServiceClient implements ILSPApplicationService, IBinder
 
     final String processName;
 
+    // modules running with the uid of this process, null until fetched with the module list
+    private volatile Set<String> modulePackages;
+    private final Map<String, IBinder> moduleBinders = new ConcurrentHashMap<>();
+    // from the injection bundle, the modern modules are handed out once
+    private volatile String prefsDir;
+    private volatile List<Module> modules;
+
     private ApplicationServiceClient(@NonNull ILSPApplicationService service, @NonNull String processName) throws RemoteException {
         this.service = service;
         this.processName = processName;
@@ -59,8 +72,38 @@ public class ApplicationServiceClient implements ILSPApplicationService, IBinder
 
     @Override
     public IBinder requestModuleBinder(String name) {
+        var modulePackages = this.modulePackages;
+        if (modulePackages != null && !modulePackages.contains(name)) return null;
+        var binder = moduleBinders.get(name);
+        if (binder != null) return binder;
+        try {
+            binder = service.requestModuleBinder(name);
+            if (binder != null) moduleBinders.put(name, binder);
+            return binder;
+        } catch (RemoteException | NullPointerException ignored) {
+        }
+        return null;
+    }
+
+    /**
+     * Fetches the injection bundle and keeps the parts needed later, so that startup takes a
+     * single transaction.
+     *
+     * @return the legacy modules
+     */
+    public List<Module> loadInjectionBundle() {
+        var bundle = getInjectionBundle();
+        if (bundle == null) return getLegacyModulesList();
+        modulePackages = new HashSet<>(bundle.modulePackages);
+        prefsDir = bundle.prefsDir;
+        modules = bundle.modules;
+        return bundle.legacyModules;
+    }
+
+    @Override
+    public InjectionBundle getInjectionBundle() {
         try {
-            return service.requestModuleBinder(name);
+            return service.getInjectionBundle();
         } catch (RemoteException | NullPointerException ignored) {
         }
         return null;
@@ -77,6 +120,11 @@ public class ApplicationServiceClient implements ILSPApplicationService, IBinder
 
     @Override
     public List<Module> getModulesList() {
+        var modules = this.modules;
+        if (modules != null) {
+            this.modules = null;
+            return modules;
+        }
         try {
             return service.getModulesList();
         } catch (RemoteException | NullPointerException ignored) {
@@ -86,6 +134,12 @@ public class ApplicationServiceClient implements ILSPApplicationService, IBinder
 
     @Override
     public String getPrefsPath(String packageName) {
+        var prefsDir = this.prefsDir;
+        var modulePackages = this.modulePackages;
+        // the daemon also fixes the permissions of the prefs of modules running in this process
+        if (prefsDir != null && modulePackages != null && !modulePackages.contains(packageName)) {
+            return packageName.isEmpty() ? prefsDir : prefsDir + File.separator + packageName;
+        }
         try {
             return service.getPrefsPath(packageName);
         } catch (RemoteException | NullPointerException ignored) {
@@ -111,6 +165,15 @@ public class ApplicationServiceClient implements ILSPApplicationService, IBinder
         return -1;
     }
 
+    @Override
+    public boolean registerHookMetrics(IBinder callback) {
+        try {
+            return service.registerHookMetrics(callback);
+        } catch (RemoteException | NullPointerException ignored) {
+        }
+        return false;
+    }
+
     @Override
     public IBinder asBinder() {
         return service.asBinder();
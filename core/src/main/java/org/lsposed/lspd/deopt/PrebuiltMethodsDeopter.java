@@ -45,6 +45,8 @@ public class PrebuiltMethodsDeopter {
                 if (caller.length < 2) continue;
                 if (!(caller[0] instanceof String)) continue;
                 if (!(caller[1] instanceof String)) continue;
+                // most callers only exist on some ROMs, skip the others without throwing
+                if (XposedHelpers.findClassIfExists((String) caller[0], cl) == null) continue;
                 Executable method;
                 Object[] params = new Object[caller.length - 2];
                 System.arraycopy(caller, 2, params, 0, params.length);
@@ -0,0 +1,92 @@
+package org.lsposed.lspd.impl;
+
+import java.lang.reflect.Executable;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.robv.android.xposed.XposedBridge;
+
+/**
+ * Per-thread stack of reusable dispatch frames for {@link LSPosedBridge.NativeHooker}.
+ * <p>
+ * Frames are indexed by the hook nesting depth of the current thread, so a hooked method that
+ * calls itself or another hooked method gets a frame of its own. A frame is reset and handed out
+ * again once the hooked call that acquired it has returned. Frames only hold state modules never
+ * see: the callback, param and args array handed to hookers are allocated per call, since modules
+ * are free to keep them after the call returned.
+ */
+public final class HookCallbackPool {
+    private static final int MAX_POOLED_DEPTH = 16;
+    private static final Object[] EMPTY_ARRAY = new Object[0];
+
+    private static final ThreadLocal<HookCallbackPool> pools = ThreadLocal.withInitial(HookCallbackPool::new);
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+
+    private final Frame<?>[] frames = new Frame<?>[MAX_POOLED_DEPTH];
+    private int depth = 0;
+
+    private HookCallbackPool() {
+    }
+
+    static final class Frame<T extends Executable> {
+        final XposedBridge.LegacyApiSupport<T> legacy = new XposedBridge.LegacyApiSupport<>();
+
+        private final HookCallbackPool owner;
+        private Object[] ctx = EMPTY_ARRAY;
+        private int ctxUsed = 0;
+
+        private Frame(HookCallbackPool owner) {
+            this.owner = owner;
+        }
+
+        Object[] ctx(int length) {
+            if (ctx.length < length) {
+                ctx = new Object[length];
+            }
+            ctxUsed = length;
+            return ctx;
+        }
+
+        void release() {
+            legacy.reset();
+            for (int i = 0; i < ctxUsed; i++) {
+                ctx[i] = null;
+            }
+            ctxUsed = 0;
+            owner.depth--;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T extends Executable> Frame<T> acquire() {
+        var pool = pools.get();
+        int depth = pool.depth++;
+        if (depth < MAX_POOLED_DEPTH) {
+            var frame = pool.frames[depth];
+            if (frame != null) {
+                hits.increment();
+                return (Frame<T>) frame;
+            }
+            misses.increment();
+            frame = new Frame<>(pool);
+            pool.frames[depth] = frame;
+            return (Frame<T>) frame;
+        }
+        misses.increment();
+        return new Frame<>(pool);
+    }
+
+    /**
+     * Number of hooked calls that were served by a pooled frame, for verification.
+     */
+    public static long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of hooked calls that had to allocate a new frame, for verification.
+     */
+    public static long getMissCount() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,252 @@
+package org.lsposed.lspd.impl;
+
+import androidx.annotation.NonNull;
+
+import org.lsposed.lspd.IHookMetricsCallback;
+import org.lsposed.lspd.IHookMetricsReceiver;
+import org.lsposed.lspd.models.HookMetric;
+import org.lsposed.lspd.service.ILSPApplicationService;
+import org.lsposed.lspd.util.ConcurrentWeakIdentityMap;
+import org.lsposed.lspd.util.Utils;
+
+import java.lang.reflect.Executable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.robv.android.xposed.XC_MethodHook;
+
+/**
+ * Optional per-hook instrumentation of the dispatch in {@link LSPosedBridge.NativeHooker}.
+ * <p>
+ * For every hooked executable it records the time spent in the original method, and for every
+ * hooker of it the time spent in its before and after callbacks. Counters are striped
+ * {@link LongAdder}s and durations go to fixed power-of-two buckets, so recording never takes a
+ * lock. Recording is off by default, it is switched at runtime by the daemon through the
+ * callback registered in {@link #init}, which also collects the snapshots. Hookers are reported
+ * with the module whose class loader, as registered by {@link #registerModule}, defined them.
+ * <p>
+ * Parts of the framework may add plain {@link Counter}s, which are snapshotted alongside and
+ * should only be incremented while recording is enabled.
+ */
+public final class HookMetrics {
+    private static volatile boolean enabled = false;
+
+    private static final Map<Executable, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private static final List<Counter> counters = new CopyOnWriteArrayList<>();
+    private static final ConcurrentWeakIdentityMap<ClassLoader, String> modules = new ConcurrentWeakIdentityMap<>();
+
+    private HookMetrics() {
+    }
+
+    public static void init(ILSPApplicationService service) {
+        if (service == null) return;
+        var callback = new IHookMetricsCallback.Stub() {
+            @Override
+            public void setEnabled(boolean enabled) {
+                HookMetrics.setEnabled(enabled);
+            }
+
+            @Override
+            public void collect(IHookMetricsReceiver receiver) {
+                try {
+                    receiver.onMetrics(snapshot());
+                } catch (Throwable e) {
+                    Utils.logW("report hook metrics", e);
+                }
+            }
+        };
+        try {
+            setEnabled(service.registerHookMetrics(callback.asBinder()));
+        } catch (Throwable e) {
+            Utils.logW("register hook metrics", e);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        HookMetrics.enabled = enabled;
+    }
+
+    /**
+     * Metrics of {@code method}, or {@code null} if recording is disabled.
+     */
+    static MethodMetrics of(Executable method) {
+        if (!enabled) return null;
+        var metrics = methods.get(method);
+        if (metrics == null) {
+            metrics = methods.computeIfAbsent(method, MethodMetrics::new);
+        }
+        return metrics;
+    }
+
+    /**
+     * Attributes hookers defined by {@code loader} to the module {@code packageName}.
+     */
+    public static void registerModule(ClassLoader loader, String packageName) {
+        modules.put(loader, packageName);
+    }
+
+    /**
+     * Creates a counter that is reported as {@code name} of {@code method}.
+     */
+    public static Counter counter(String method, String name) {
+        var counter = new Counter(method, name);
+        counters.add(counter);
+        return counter;
+    }
+
+    @NonNull
+    public static List<HookMetric> snapshot() {
+        var list = new ArrayList<HookMetric>();
+        for (var metrics : methods.values()) {
+            metrics.original.snapshot(list, metrics.name, null, null, HookMetric.PHASE_ORIGINAL);
+            for (var hooker : metrics.hookers.values()) {
+                hooker.before.snapshot(list, metrics.name, hooker.name, hooker.module, HookMetric.PHASE_BEFORE);
+                hooker.after.snapshot(list, metrics.name, hooker.name, hooker.module, HookMetric.PHASE_AFTER);
+            }
+        }
+        for (var counter : counters) {
+            counter.snapshot(list);
+        }
+        return list;
+    }
+
+    private static Class<?> hookerClass(Object hooker) {
+        if (hooker instanceof LSPosedBridge.HookerCallback) {
+            return ((LSPosedBridge.HookerCallback) hooker).hookerClass;
+        } else if (hooker instanceof XC_MethodHook) {
+            return hooker.getClass();
+        }
+        return null;
+    }
+
+    private static String moduleOf(Class<?> hookerClass) {
+        if (hookerClass == null) return null;
+        for (var loader = hookerClass.getClassLoader(); loader != null; loader = loader.getParent()) {
+            var module = modules.get(loader);
+            if (module != null) return module;
+        }
+        return null;
+    }
+
+    static final class Histogram {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAdder[] buckets = new LongAdder[HookMetric.BUCKET_COUNT];
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            int bucket = 63 - Long.numberOfLeadingZeros(nanos) - HookMetric.BUCKET_SHIFT;
+            if (bucket < 0) {
+                bucket = 0;
+            } else if (bucket >= buckets.length) {
+                bucket = buckets.length - 1;
+            }
+            count.increment();
+            total.add(nanos);
+            buckets[bucket].increment();
+        }
+
+        void snapshot(List<HookMetric> list, String method, String hooker, String module, int phase) {
+            var count = this.count.sum();
+            if (count == 0) return;
+            var metric = new HookMetric();
+            metric.method = method;
+            metric.hooker = hooker;
+            metric.module = module;
+            metric.phase = phase;
+            metric.processes = 1;
+            metric.count = count;
+            metric.totalNanos = total.sum();
+            metric.buckets = new long[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                metric.buckets[i] = buckets[i].sum();
+            }
+            list.add(metric);
+        }
+    }
+
+    public static final class Counter {
+        private final String method;
+        private final String name;
+        private final LongAdder count = new LongAdder();
+
+        private Counter(String method, String name) {
+            this.method = method;
+            this.name = name;
+        }
+
+        public void increment() {
+            count.increment();
+        }
+
+        void snapshot(List<HookMetric> list) {
+            var count = this.count.sum();
+            if (count == 0) return;
+            var metric = new HookMetric();
+            metric.method = method;
+            metric.hooker = name;
+            metric.phase = HookMetric.PHASE_COUNTER;
+            metric.processes = 1;
+            metric.count = count;
+            metric.buckets = new long[0];
+            list.add(metric);
+        }
+    }
+
+    static final class HookerMetrics {
+        final String name;
+        final String module;
+        final Histogram before = new Histogram();
+        final Histogram after = new Histogram();
+
+        HookerMetrics(Object hooker) {
+            var hookerClass = hookerClass(hooker);
+            this.name = hookerClass != null ? hookerClass.getName() : String.valueOf(hooker);
+            this.module = moduleOf(hookerClass);
+        }
+    }
+
+    public static final class MethodMetrics {
+        final String name;
+        final Histogram original = new Histogram();
+        // keyed by the identity of the HookerCallback or XC_MethodHook
+        private final Map<Object, HookerMetrics> hookers = new ConcurrentHashMap<>();
+
+        private MethodMetrics(Executable method) {
+            this.name = method.toString();
+        }
+
+        private HookerMetrics hooker(Object hooker) {
+            var metrics = hookers.get(hooker);
+            if (metrics == null) {
+                metrics = hookers.computeIfAbsent(hooker, HookerMetrics::new);
+            }
+            return metrics;
+        }
+
+        public void recordBefore(Object hooker, long nanos) {
+            hooker(hooker).before.record(nanos);
+        }
+
+        public void recordAfter(Object hooker, long nanos) {
+            hooker(hooker).after.record(nanos);
+        }
+
+        void recordOriginal(long nanos) {
+            original.record(nanos);
+        }
+    }
+}
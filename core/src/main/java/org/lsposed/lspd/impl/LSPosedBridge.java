@@ -6,11 +6,17 @@ import androidx.annotation.NonNull;
 
 import org.lsposed.lspd.nativebridge.HookBridge;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Executable;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
 
+import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XposedBridge;
 import io.github.libxposed.api.XposedInterface;
 import io.github.libxposed.api.annotations.AfterInvocation;
@@ -24,32 +30,40 @@ public class LSPosedBridge {
 
     private static final String castException = "Return value's type from hook callback does not match the hooked method";
 
-    private static final Method getCause;
-
-    static {
-        Method tmp;
-        try {
-            tmp = InvocationTargetException.class.getMethod("getCause");
-        } catch (Throwable e) {
-            tmp = null;
-        }
-        getCause = tmp;
-    }
-
     public static class HookerCallback {
+        private static final MethodType beforeType = MethodType.methodType(Object.class, XposedInterface.BeforeHookCallback.class);
+        private static final MethodType afterType = MethodType.methodType(void.class, XposedInterface.AfterHookCallback.class, Object.class);
+
+        // Both handles are adapted once at hook time to a fixed type, so that dispatching
+        // is a direct invokeExact without varargs arrays or boxing of the callback arguments
         @NonNull
-        final Method beforeInvocation;
+        final MethodHandle beforeInvocation;
         @NonNull
-        final Method afterInvocation;
-
-        final int beforeParams;
-        final int afterParams;
-
-        public HookerCallback(@NonNull Method beforeInvocation, @NonNull Method afterInvocation) {
-            this.beforeInvocation = beforeInvocation;
-            this.afterInvocation = afterInvocation;
-            this.beforeParams = beforeInvocation.getParameterCount();
-            this.afterParams = afterInvocation.getParameterCount();
+        final MethodHandle afterInvocation;
+        // the hooker class, as reported by HookMetrics
+        final Class<?> hookerClass;
+
+        public HookerCallback(@NonNull Method beforeInvocation, @NonNull Method afterInvocation) throws IllegalAccessException {
+            var owner = beforeInvocation.getDeclaringClass();
+            this.hookerClass = owner == LSPosedBridge.class ? afterInvocation.getDeclaringClass() : owner;
+            var lookup = MethodHandles.lookup();
+            beforeInvocation.setAccessible(true);
+            afterInvocation.setAccessible(true);
+            var before = lookup.unreflect(beforeInvocation);
+            if (before.type().parameterCount() == 0) {
+                before = MethodHandles.dropArguments(before, 0, XposedInterface.BeforeHookCallback.class);
+            }
+            var after = lookup.unreflect(afterInvocation);
+            switch (after.type().parameterCount()) {
+                case 0:
+                    after = MethodHandles.dropArguments(after, 0, XposedInterface.AfterHookCallback.class, Object.class);
+                    break;
+                case 1:
+                    after = MethodHandles.dropArguments(after, 1, Object.class);
+                    break;
+            }
+            this.beforeInvocation = before.asType(beforeType);
+            this.afterInvocation = after.asType(afterType);
         }
     }
 
@@ -63,8 +77,17 @@ public class LSPosedBridge {
     }
 
     public static class NativeHooker<T extends Executable> {
+        private static final Object[][] EMPTY_SNAPSHOT = {new Object[0], new Object[0]};
+
         private final Object params;
 
+        // Immutable {modern, legacy} callback arrays, republished by HookBridge whenever
+        // a callback of this method is added or removed
+        private volatile Object[][] snapshot = EMPTY_SNAPSHOT;
+
+        // resolved on the first dispatch after HookMetrics got enabled
+        private HookMetrics.MethodMetrics metrics;
+
         private NativeHooker(Executable method) {
             var isStatic = Modifier.isStatic(method.getModifiers());
             Object returnType;
@@ -83,7 +106,17 @@ public class LSPosedBridge {
         // This method is quite critical. We should try not to use system methods to avoid
         // endless recursive
         public Object callback(Object[] args) throws Throwable {
+            HookCallbackPool.Frame<T> frame = HookCallbackPool.acquire();
+            try {
+                return dispatch(frame, args);
+            } finally {
+                frame.release();
+            }
+        }
+
+        private Object dispatch(HookCallbackPool.Frame<T> frame, Object[] args) throws Throwable {
             LSPosedHookCallback<T> callback = new LSPosedHookCallback<>();
+            XC_MethodHook.MethodHookParam<T> param = callback.param;
 
             var array = ((Object[]) params);
 
@@ -91,76 +124,82 @@ public class LSPosedBridge {
             var returnType = (Class<?>) array[1];
             var isStatic = (Boolean) array[2];
 
-            callback.method = method;
+            param.method = method;
 
             if (isStatic) {
-                callback.thisObject = null;
-                callback.args = args;
+                param.thisObject = null;
+                param.args = args;
             } else {
-                callback.thisObject = args[0];
-                callback.args = new Object[args.length - 1];
+                param.thisObject = args[0];
+                param.args = new Object[args.length - 1];
                 //noinspection ManualArrayCopy
                 for (int i = 0; i < args.length - 1; ++i) {
-                    callback.args[i] = args[i + 1];
+                    param.args[i] = args[i + 1];
                 }
             }
 
-            Object[][] callbacksSnapshot = HookBridge.callbackSnapshot(HookerCallback.class, method);
+            Object[][] callbacksSnapshot = snapshot;
             Object[] modernSnapshot = callbacksSnapshot[0];
             Object[] legacySnapshot = callbacksSnapshot[1];
 
             if (modernSnapshot.length == 0 && legacySnapshot.length == 0) {
-                try {
-                    return HookBridge.invokeOriginalMethod(method, callback.thisObject, callback.args);
-                } catch (InvocationTargetException ite) {
-                    throw (Throwable) HookBridge.invokeOriginalMethod(getCause, ite);
+                return invokeOriginal(method, returnType, false, param.thisObject, param.args);
+            }
+
+            HookMetrics.MethodMetrics metrics = null;
+            if (HookMetrics.isEnabled()) {
+                metrics = this.metrics;
+                if (metrics == null) {
+                    metrics = this.metrics = HookMetrics.of(method);
                 }
             }
+            long start = 0;
 
-            Object[] ctxArray = new Object[modernSnapshot.length];
+            Object[] ctxArray = frame.ctx(modernSnapshot.length);
             XposedBridge.LegacyApiSupport<T> legacy = null;
 
             // call "before method" callbacks
             int beforeIdx;
             for (beforeIdx = 0; beforeIdx < modernSnapshot.length; beforeIdx++) {
+                var hooker = (HookerCallback) modernSnapshot[beforeIdx];
+                if (metrics != null) start = System.nanoTime();
                 try {
-                    var hooker = (HookerCallback) modernSnapshot[beforeIdx];
-                    if (hooker.beforeParams == 0) {
-                        ctxArray[beforeIdx] = hooker.beforeInvocation.invoke(null);
-                    } else {
-                        ctxArray[beforeIdx] = hooker.beforeInvocation.invoke(null, callback);
-                    }
+                    ctxArray[beforeIdx] = (Object) hooker.beforeInvocation.invokeExact((XposedInterface.BeforeHookCallback) callback);
                 } catch (Throwable t) {
                     LSPosedBridge.log(t);
 
                     // reset result (ignoring what the unexpectedly exiting callback did)
                     callback.setResult(null);
-                    callback.isSkipped = false;
+                    param.returnEarly = false;
                     continue;
+                } finally {
+                    if (metrics != null) metrics.recordBefore(hooker, System.nanoTime() - start);
                 }
 
-                if (callback.isSkipped) {
+                if (param.returnEarly) {
                     // skip remaining "before" callbacks and corresponding "after" callbacks
                     beforeIdx++;
                     break;
                 }
             }
 
-            if (!callback.isSkipped && legacySnapshot.length != 0) {
+            if (!param.returnEarly && legacySnapshot.length != 0) {
                 // TODO: Separate classloader
-                legacy = new XposedBridge.LegacyApiSupport<>(callback, legacySnapshot);
+                legacy = frame.legacy;
+                legacy.init(callback, legacySnapshot, metrics);
                 legacy.handleBefore();
             }
 
             // call original method if not requested otherwise
-            if (!callback.isSkipped) {
+            if (!param.returnEarly) {
+                if (metrics != null) start = System.nanoTime();
                 try {
-                    var result = HookBridge.invokeOriginalMethod(method, callback.thisObject, callback.args);
+                    var result = invokeOriginal(method, returnType, false, param.thisObject, param.args);
                     callback.setResult(result);
-                } catch (InvocationTargetException e) {
-                    var throwable = (Throwable) HookBridge.invokeOriginalMethod(getCause, e);
+                } catch (Throwable throwable) {
                     callback.setThrowable(throwable);
                 }
+                if (metrics != null) metrics.recordOriginal(System.nanoTime() - start);
             }
 
             // call "after method" callbacks
@@ -168,14 +207,9 @@ public class LSPosedBridge {
                 Object lastResult = callback.getResult();
                 Throwable lastThrowable = callback.getThrowable();
                 var hooker = (HookerCallback) modernSnapshot[afterIdx];
+                if (metrics != null) start = System.nanoTime();
                 try {
-                    if (hooker.afterParams == 0) {
-                        hooker.afterInvocation.invoke(null);
-                    } else if (hooker.afterParams == 1) {
-                        hooker.afterInvocation.invoke(null, callback);
-                    } else {
-                        hooker.afterInvocation.invoke(null, callback, ctxArray[afterIdx]);
-                    }
+                    hooker.afterInvocation.invokeExact((XposedInterface.AfterHookCallback) callback, ctxArray[afterIdx]);
                 } catch (Throwable t) {
                     LSPosedBridge.log(t);
 
@@ -186,6 +220,7 @@ public class LSPosedBridge {
                         callback.setThrowable(lastThrowable);
                     }
                 }
+                if (metrics != null) metrics.recordAfter(hooker, System.nanoTime() - start);
             }
 
             if (legacy != null) {
@@ -206,18 +241,56 @@ public class LSPosedBridge {
         }
     }
 
+    /**
+     * Calls the original of {@code method} through the {@link HookBridge} entry point matching
+     * {@code returnType} ({@code null} for constructors).
+     *
+     * @param wrapThrowable whether exceptions thrown by the original should be wrapped in an
+     *                      {@link InvocationTargetException}, as {@link Method#invoke} does
+     */
+    public static Object invokeOriginal(Executable method, Class<?> returnType, boolean wrapThrowable,
+                                        Object thisObject, Object[] args) throws Throwable {
+        if (returnType == null || returnType == void.class) {
+            HookBridge.invokeOriginalV(method, wrapThrowable, thisObject, args);
+            return null;
+        } else if (!returnType.isPrimitive()) {
+            return HookBridge.invokeOriginalL(method, wrapThrowable, thisObject, args);
+        } else if (returnType == int.class) {
+            return HookBridge.invokeOriginalI(method, wrapThrowable, thisObject, args);
+        } else if (returnType == boolean.class) {
+            return HookBridge.invokeOriginalZ(method, wrapThrowable, thisObject, args);
+        } else if (returnType == long.class) {
+            return HookBridge.invokeOriginalJ(method, wrapThrowable, thisObject, args);
+        } else if (returnType == float.class) {
+            return HookBridge.invokeOriginalF(method, wrapThrowable, thisObject, args);
+        } else if (returnType == double.class) {
+            return HookBridge.invokeOriginalD(method, wrapThrowable, thisObject, args);
+        } else if (returnType == byte.class) {
+            return HookBridge.invokeOriginalB(method, wrapThrowable, thisObject, args);
+        } else if (returnType == char.class) {
+            return HookBridge.invokeOriginalC(method, wrapThrowable, thisObject, args);
+        } else {
+            return HookBridge.invokeOriginalS(method, wrapThrowable, thisObject, args);
+        }
+    }
+
     public static void dummyCallback() {
     }
 
-    public static <T extends Executable> XposedInterface.MethodUnhooker<T>
-    doHook(T hookMethod, int priority, Class<? extends XposedInterface.Hooker> hooker) {
+    private static void checkHookTarget(Executable hookMethod) {
         if (Modifier.isAbstract(hookMethod.getModifiers())) {
             throw new IllegalArgumentException("Cannot hook abstract methods: " + hookMethod);
         } else if (hookMethod.getDeclaringClass().getClassLoader() == LSPosedContext.class.getClassLoader()) {
             throw new IllegalArgumentException("Do not allow hooking inner methods");
         } else if (hookMethod.getDeclaringClass() == Method.class && hookMethod.getName().equals("invoke")) {
             throw new IllegalArgumentException("Cannot hook Method.invoke");
-        } else if (hooker == null) {
+        } else if (hookMethod.getDeclaringClass() == MethodHandle.class && hookMethod.getName().startsWith("invoke")) {
+            throw new IllegalArgumentException("Cannot hook MethodHandle.invoke");
+        }
+    }
+
+    private static HookerCallback resolveHooker(Class<? extends XposedInterface.Hooker> hooker) {
+        if (hooker == null) {
             throw new IllegalArgumentException("hooker should not be null!");
         } else if (hooker.getAnnotation(XposedHooker.class) == null) {
             throw new IllegalArgumentException("Hooker should be annotated with @XposedHooker");
@@ -275,25 +348,66 @@ public class LSPosedBridge {
                     throw new IllegalArgumentException("BeforeInvocation and AfterInvocation method format is invalid");
                 }
             }
-        } catch (NoSuchMethodException e) {
+            return new HookerCallback(beforeInvocation, afterInvocation);
+        } catch (ReflectiveOperationException e) {
             throw new HookFailedError(e);
         }
+    }
 
-        var callback = new LSPosedBridge.HookerCallback(beforeInvocation, afterInvocation);
-        if (HookBridge.hookMethod(true, hookMethod, LSPosedBridge.NativeHooker.class, priority, callback)) {
-            return new XposedInterface.MethodUnhooker<>() {
-                @NonNull
-                @Override
-                public T getOrigin() {
-                    return hookMethod;
-                }
+    private static <T extends Executable> XposedInterface.MethodUnhooker<T>
+    newUnhooker(T hookMethod, HookerCallback callback) {
+        return new XposedInterface.MethodUnhooker<>() {
+            @NonNull
+            @Override
+            public T getOrigin() {
+                return hookMethod;
+            }
 
-                @Override
-                public void unhook() {
-                    HookBridge.unhookMethod(true, hookMethod, callback);
-                }
-            };
+            @Override
+            public void unhook() {
+                HookBridge.unhookMethod(true, hookMethod, callback);
+            }
+        };
+    }
+
+    public static <T extends Executable> XposedInterface.MethodUnhooker<T>
+    doHook(T hookMethod, int priority, Class<? extends XposedInterface.Hooker> hooker) {
+        checkHookTarget(hookMethod);
+        var callback = resolveHooker(hooker);
+        if (HookBridge.hookMethod(true, hookMethod, priority, callback)) {
+            return newUnhooker(hookMethod, callback);
         }
         throw new HookFailedError("Cannot hook " + hookMethod);
     }
+
+    /**
+     * Hooks all {@code hookMethods} with the same hooker in a single native call. The hooker is
+     * validated and resolved only once. Either all methods are hooked or, if one of them fails,
+     * the ones already hooked are unhooked again and a {@link HookFailedError} is thrown.
+     */
+    public static <T extends Executable> List<XposedInterface.MethodUnhooker<T>>
+    doHook(T[] hookMethods, int priority, Class<? extends XposedInterface.Hooker> hooker) {
+        for (var hookMethod : hookMethods) {
+            checkHookTarget(hookMethod);
+        }
+        var callback = resolveHooker(hooker);
+        var results = HookBridge.hookMethods(true, hookMethods, priority, callback);
+        var unhookers = new ArrayList<XposedInterface.MethodUnhooker<T>>(hookMethods.length);
+        for (int i = 0; i < hookMethods.length; i++) {
+            if (results[i]) {
+                unhookers.add(newUnhooker(hookMethods[i], callback));
+            }
+        }
+        if (unhookers.size() != hookMethods.length) {
+            for (var unhooker : unhookers) {
+                unhooker.unhook();
+            }
+            for (int i = 0; i < hookMethods.length; i++) {
+                if (!results[i]) {
+                    throw new HookFailedError("Cannot hook " + hookMethods[i]);
+                }
+            }
+        }
+        return unhookers;
+    }
 }
@@ -31,6 +31,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
 import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -52,6 +53,9 @@ public class LSPosedContext implements XposedInterface {
     public static String processName;
 
     static final Set<XposedModule> modules = ConcurrentHashMap.newKeySet();
+    // receivers of onPackageLoaded, by package for modules with scoped callbacks
+    private static final Set<XposedModule> unscopedModules = ConcurrentHashMap.newKeySet();
+    private static final Map<String, Set<XposedModule>> scopedModules = new ConcurrentHashMap<>();
 
     private final String mPackageName;
     private final ApplicationInfo mApplicationInfo;
@@ -64,16 +68,30 @@ public class LSPosedContext implements XposedInterface {
         this.service = service;
     }
 
+    public static boolean hasPackageLoadedCallbacks(String packageName) {
+        return !unscopedModules.isEmpty() || scopedModules.containsKey(packageName);
+    }
+
     public static void callOnPackageLoaded(XposedModuleInterface.PackageLoadedParam param) {
-        for (XposedModule module : modules) {
-            try {
-                module.onPackageLoaded(param);
-            } catch (Throwable t) {
-                Log.e(TAG, "Error when calling onPackageLoaded of " + module.getApplicationInfo().packageName, t);
+        for (XposedModule module : unscopedModules) {
+            callOnPackageLoaded(module, param);
+        }
+        var scoped = scopedModules.get(param.getPackageName());
+        if (scoped != null) {
+            for (XposedModule module : scoped) {
+                callOnPackageLoaded(module, param);
             }
         }
     }
 
+    private static void callOnPackageLoaded(XposedModule module, XposedModuleInterface.PackageLoadedParam param) {
+        try {
+            module.onPackageLoaded(param);
+        } catch (Throwable t) {
+            Log.e(TAG, "Error when calling onPackageLoaded of " + module.getApplicationInfo().packageName, t);
+        }
+    }
+
     public static void callOnSystemServerLoaded(XposedModuleInterface.SystemServerLoadedParam param) {
         for (XposedModule module : modules) {
             try {
@@ -102,6 +120,7 @@ public class LSPosedContext implements XposedInterface {
                 Log.e(TAG, "  This may cause strange issues and must be fixed by the module developer.");
                 return false;
             }
+            HookMetrics.registerModule(mcl, module.packageName);
             var ctx = new LSPosedContext(module.packageName, module.applicationInfo, module.service);
             for (var entry : module.file.moduleClassNames) {
                 var moduleClass = mcl.loadClass(entry);
@@ -125,6 +144,13 @@ public class LSPosedContext implements XposedInterface {
                         }
                     });
                     modules.add(moduleContext);
+                    if (module.scope == null) {
+                        unscopedModules.add(moduleContext);
+                    } else {
+                        for (var packageName : module.scope) {
+                            scopedModules.computeIfAbsent(packageName, k -> ConcurrentHashMap.newKeySet()).add(moduleContext);
+                        }
+                    }
                 } catch (Throwable e) {
                     Log.e(TAG, "    Failed to load class " + moduleClass, e);
                 }
@@ -188,6 +214,16 @@ public class LSPosedContext implements XposedInterface {
         return LSPosedBridge.doHook(origin, priority, hooker);
     }
 
+    /**
+     * Hooks all {@code origins} with the same hooker at once, which is considerably cheaper than
+     * hooking them one by one. Either all of them are hooked or a {@link io.github.libxposed.api.errors.HookFailedError}
+     * is thrown and none is.
+     */
+    @NonNull
+    public <T extends Executable> List<MethodUnhooker<T>> hookMethods(@NonNull T[] origins, int priority, @NonNull Class<? extends Hooker> hooker) {
+        return LSPosedBridge.doHook(origins, priority, hooker);
+    }
+
     private static boolean doDeoptimize(@NonNull Executable method) {
         if (Modifier.isAbstract(method.getModifiers())) {
             throw new IllegalArgumentException("Cannot deoptimize abstract methods: " + method);
@@ -210,41 +246,17 @@ public class LSPosedContext implements XposedInterface {
     @Nullable
     @Override
     public Object invokeOrigin(@NonNull Method method, @Nullable Object thisObject, Object[] args) throws InvocationTargetException, IllegalArgumentException, IllegalAccessException {
-        return HookBridge.invokeOriginalMethod(method, thisObject, args);
+        return invokeOriginChecked(method, method.getReturnType(), thisObject, args);
     }
 
-    private static char getTypeShorty(Class<?> type) {
-        if (type == int.class) {
-            return 'I';
-        } else if (type == long.class) {
-            return 'J';
-        } else if (type == float.class) {
-            return 'F';
-        } else if (type == double.class) {
-            return 'D';
-        } else if (type == boolean.class) {
-            return 'Z';
-        } else if (type == byte.class) {
-            return 'B';
-        } else if (type == char.class) {
-            return 'C';
-        } else if (type == short.class) {
-            return 'S';
-        } else if (type == void.class) {
-            return 'V';
-        } else {
-            return 'L';
-        }
-    }
-
-    private static char[] getExecutableShorty(Executable executable) {
-        var parameterTypes = executable.getParameterTypes();
-        var shorty = new char[parameterTypes.length + 1];
-        shorty[0] = getTypeShorty(executable instanceof Method ? ((Method) executable).getReturnType() : void.class);
-        for (int i = 1; i < shorty.length; i++) {
-            shorty[i] = getTypeShorty(parameterTypes[i - 1]);
+    private static Object invokeOriginChecked(Executable method, Class<?> returnType, Object thisObject, Object[] args) throws InvocationTargetException, IllegalAccessException {
+        try {
+            return LSPosedBridge.invokeOriginal(method, returnType, true, thisObject, args);
+        } catch (InvocationTargetException | IllegalAccessException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
         }
-        return shorty;
     }
 
     @Nullable
@@ -253,14 +265,14 @@ public class LSPosedContext implements XposedInterface {
         if (Modifier.isStatic(method.getModifiers())) {
             throw new IllegalArgumentException("Cannot invoke special on static method: " + method);
         }
-        return HookBridge.invokeSpecialMethod(method, getExecutableShorty(method), method.getDeclaringClass(), thisObject, args);
+        return SpecialInvoker.of(method).invoke(thisObject, args);
     }
 
     @NonNull
     @Override
     public <T> T newInstanceOrigin(@NonNull Constructor<T> constructor, Object... args) throws InvocationTargetException, IllegalAccessException, InstantiationException {
         var obj = HookBridge.allocateObject(constructor.getDeclaringClass());
-        HookBridge.invokeOriginalMethod(constructor, obj, args);
+        invokeOriginChecked(constructor, null, obj, args);
         return obj;
     }
 
@@ -272,7 +284,7 @@ public class LSPosedContext implements XposedInterface {
             throw new IllegalArgumentException(subClass + " is not inherited from " + superClass);
         }
         var obj = HookBridge.allocateObject(subClass);
-        HookBridge.invokeSpecialMethod(constructor, getExecutableShorty(constructor), superClass, obj, args);
+        SpecialInvoker.of(constructor).invoke(obj, args);
         return obj;
     }
 
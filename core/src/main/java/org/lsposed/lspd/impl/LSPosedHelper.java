@@ -2,6 +2,7 @@ package org.lsposed.lspd.impl;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -24,13 +25,13 @@ public class LSPosedHelper {
     @SuppressWarnings("UnusedReturnValue")
     public static <T> Set<XposedInterface.MethodUnhooker<Method>>
     hookAllMethods(Class<? extends XposedInterface.Hooker> hooker, Class<T> clazz, String methodName) {
-        var unhooks = new HashSet<XposedInterface.MethodUnhooker<Method>>();
+        var methods = new ArrayList<Method>();
         for (var method : clazz.getDeclaredMethods()) {
             if (method.getName().equals(methodName)) {
-                unhooks.add(LSPosedBridge.doHook(method, XposedInterface.PRIORITY_DEFAULT, hooker));
+                methods.add(method);
             }
         }
-        return unhooks;
+        return new HashSet<>(LSPosedBridge.doHook(methods.toArray(new Method[0]), XposedInterface.PRIORITY_DEFAULT, hooker));
     }
 
     @SuppressWarnings("UnusedReturnValue")
@@ -6,21 +6,17 @@ import androidx.annotation.Nullable;
 import java.lang.reflect.Executable;
 import java.lang.reflect.Member;
 
+import de.robv.android.xposed.XC_MethodHook;
 import io.github.libxposed.api.XposedInterface;
 
+/**
+ * Modern API view of a hooked call. The state lives in {@link #param}, which is handed to legacy
+ * callbacks as is, so methods hooked by both APIs share it without copying back and forth.
+ * {@link XC_MethodHook.MethodHookParam#returnEarly} doubles as the skipped flag.
+ */
 public class LSPosedHookCallback<T extends Executable> implements XposedInterface.BeforeHookCallback, XposedInterface.AfterHookCallback {
 
-    public Member method;
-
-    public Object thisObject;
-
-    public Object[] args;
-
-    public Object result;
-
-    public Throwable throwable;
-
-    public boolean isSkipped;
+    public final XC_MethodHook.MethodHookParam<T> param = new XC_MethodHook.MethodHookParam<>();
 
     public LSPosedHookCallback() {
     }
@@ -30,35 +26,35 @@ public class LSPosedHookCallback<T extends Executable> implements XposedInterfac
     @NonNull
     @Override
     public Member getMember() {
-        return this.method;
+        return param.method;
     }
 
     @Nullable
     @Override
     public Object getThisObject() {
-        return this.thisObject;
+        return param.thisObject;
     }
 
     @NonNull
     @Override
     public Object[] getArgs() {
-        return this.args;
+        return param.args;
     }
 
     // Before
 
     @Override
     public void returnAndSkip(@Nullable Object result) {
-        this.result = result;
-        this.throwable = null;
-        this.isSkipped = true;
+        param.result = result;
+        param.throwable = null;
+        param.returnEarly = true;
     }
 
     @Override
     public void throwAndSkip(@Nullable Throwable throwable) {
-        this.result = null;
-        this.throwable = throwable;
-        this.isSkipped = true;
+        param.result = null;
+        param.throwable = throwable;
+        param.returnEarly = true;
     }
 
     // After
@@ -66,29 +62,29 @@ public class LSPosedHookCallback<T extends Executable> implements XposedInterfac
     @Nullable
     @Override
     public Object getResult() {
-        return this.result;
+        return param.result;
     }
 
     @Nullable
     @Override
     public Throwable getThrowable() {
-        return this.throwable;
+        return param.throwable;
     }
 
     @Override
     public boolean isSkipped() {
-        return this.isSkipped;
+        return param.returnEarly;
     }
 
     @Override
     public void setResult(@Nullable Object result) {
-        this.result = result;
-        this.throwable = null;
+        param.result = result;
+        param.throwable = null;
     }
 
     @Override
     public void setThrowable(@Nullable Throwable throwable) {
-        this.result = null;
-        this.throwable = throwable;
+        param.result = null;
+        param.throwable = throwable;
     }
 }
@@ -0,0 +1,61 @@
+package org.lsposed.lspd.impl;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.lsposed.lspd.nativebridge.HookBridge;
+import org.lsposed.lspd.util.ConcurrentWeakIdentityMap;
+
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Executable;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Non-virtual invoker of a method or constructor, as used by {@link LSPosedContext#invokeSpecial}
+ * and {@link LSPosedContext#newInstanceSpecial}.
+ * <p>
+ * The method ID, shorty and parameter types are resolved natively once per executable, so
+ * repeated calls only pass the receiver and the arguments. Invokers are looked up by equality,
+ * as every {@link Class#getDeclaredMethod} returns a new copy of the executable, in a map per
+ * declaring class. As in the member index of the legacy API, classes are held weakly and their
+ * invokers softly, since the native side references the class until an invoker is finalized.
+ */
+public final class SpecialInvoker {
+    private static final ConcurrentWeakIdentityMap<Class<?>, SoftReference<Map<Executable, SpecialInvoker>>> invokers = new ConcurrentWeakIdentityMap<>();
+
+    private final long handle;
+
+    private SpecialInvoker(Executable executable) {
+        this.handle = HookBridge.resolveSpecialInvoker(executable);
+    }
+
+    @NonNull
+    public static SpecialInvoker of(@NonNull Executable executable) {
+        var declaringClass = executable.getDeclaringClass();
+        var ref = invokers.get(declaringClass);
+        var byExecutable = ref == null ? null : ref.get();
+        if (byExecutable == null) {
+            // a racing put only drops the other map and the invokers resolved into it
+            byExecutable = new ConcurrentHashMap<>();
+            invokers.put(declaringClass, new SoftReference<>(byExecutable));
+        }
+        var invoker = byExecutable.get(executable);
+        if (invoker == null) {
+            invoker = byExecutable.computeIfAbsent(executable, SpecialInvoker::new);
+        }
+        return invoker;
+    }
+
+    @Nullable
+    public Object invoke(@NonNull Object thisObject, Object... args) throws InvocationTargetException, IllegalArgumentException, IllegalAccessException {
+        return HookBridge.invokeSpecial(this, handle, thisObject, args);
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        // handle stays 0 if resolving failed in the constructor
+        if (handle != 0) HookBridge.freeSpecialInvoker(handle);
+    }
+}
@@ -6,7 +6,9 @@ import java.lang.reflect.InvocationTargetException;
 import dalvik.annotation.optimization.FastNative;
 
 public class HookBridge {
-    public static native boolean hookMethod(boolean useModernApi, Executable hookMethod, Class<?> hooker, int priority, Object callback);
+    public static native boolean hookMethod(boolean useModernApi, Executable hookMethod, int priority, Object callback);
+
+    public static native boolean[] hookMethods(boolean useModernApi, Executable[] hookMethods, int priority, Object callback);
 
     public static native boolean unhookMethod(boolean useModernApi, Executable hookMethod, Object callback);
 
@@ -14,15 +16,38 @@ public class HookBridge {
 
     public static native <T> T allocateObject(Class<T> clazz) throws InstantiationException;
 
-    public static native Object invokeOriginalMethod(Executable method, Object thisObject, Object... args) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException;
+    // Shorty-specialized invokeOriginalMethod. Hooked methods are called on their backup directly;
+    // anything thrown by the original is rethrown as is unless wrapThrowable is set.
+    public static native boolean invokeOriginalZ(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable;
+
+    public static native byte invokeOriginalB(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable;
+
+    public static native char invokeOriginalC(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable;
+
+    public static native short invokeOriginalS(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable;
+
+    public static native int invokeOriginalI(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable;
+
+    public static native long invokeOriginalJ(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable;
+
+    public static native float invokeOriginalF(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable;
 
-    public static native <T> Object invokeSpecialMethod(Executable method, char[] shorty, Class<T> clazz, Object thisObject, Object... args) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException;
+    public static native double invokeOriginalD(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable;
+
+    public static native Object invokeOriginalL(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable;
+
+    public static native void invokeOriginalV(Executable method, boolean wrapThrowable, Object thisObject, Object[] args) throws Throwable;
+
+    public static native long resolveSpecialInvoker(Executable method);
+
+    public static native void freeSpecialInvoker(long invoker);
+
+    // owner is the Java object holding invoker, which stays reachable for as long as the call runs
+    public static native Object invokeSpecial(Object owner, long invoker, Object thisObject, Object[] args) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException;
 
     @FastNative
     public static native boolean instanceOf(Object obj, Class<?> clazz);
 
     @FastNative
     public static native boolean setTrusted(Object cookie);
-
-    public static native Object[][] callbackSnapshot(Class<?> hooker_callback, Executable method);
 }
@@ -0,0 +1,175 @@
+package org.lsposed.lspd.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Map with weakly referenced keys that are compared by identity, so that neither lookups nor
+ * inserts call {@code equals} or {@code hashCode} of the keys.
+ * <p>
+ * The entries are spread over striped hash tables. Reads take no lock, writes lock only the
+ * stripe of their key. Entries of collected keys are queued by the garbage collector and
+ * removed on the next write.
+ */
+public final class ConcurrentWeakIdentityMap<K, V> {
+    private static final int STRIPES = 16;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ReferenceQueue<K> queue = new ReferenceQueue<>();
+    private final Stripe<K, V>[] stripes;
+
+    private static final class Entry<K, V> extends WeakReference<K> {
+        final int hash;
+        final Stripe<K, V> stripe;
+        volatile V value;
+        volatile Entry<K, V> next;
+
+        Entry(K key, int hash, V value, Entry<K, V> next, Stripe<K, V> stripe, ReferenceQueue<K> queue) {
+            super(key, queue);
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+            this.stripe = stripe;
+        }
+    }
+
+    private static final class Stripe<K, V> {
+        volatile AtomicReferenceArray<Entry<K, V>> table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+        int size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentWeakIdentityMap() {
+        stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe<>();
+        }
+    }
+
+    private static int hash(Object key) {
+        int h = System.identityHashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+    private Stripe<K, V> stripeFor(int hash) {
+        // the low bits pick the bucket, so take the stripe from the high ones
+        return stripes[(hash >>> 24) & (STRIPES - 1)];
+    }
+
+    public V get(Object key) {
+        int hash = hash(key);
+        var table = stripeFor(hash).table;
+        for (var e = table.get(hash & (table.length() - 1)); e != null; e = e.next) {
+            if (e.hash == hash && e.get() == key) {
+                return e.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Maps {@code key} to {@code value} and returns the previous value, if any.
+     */
+    public V put(K key, V value) {
+        if (value == null) throw new NullPointerException("value must not be null");
+        expungeStaleEntries();
+        int hash = hash(key);
+        var stripe = stripeFor(hash);
+        synchronized (stripe) {
+            var table = stripe.table;
+            int index = hash & (table.length() - 1);
+            var head = table.get(index);
+            for (var e = head; e != null; e = e.next) {
+                if (e.hash == hash && e.get() == key) {
+                    var previous = e.value;
+                    e.value = value;
+                    return previous;
+                }
+            }
+            table.set(index, new Entry<>(key, hash, value, head, stripe, queue));
+            if (++stripe.size > table.length() / 4 * 3) {
+                resize(stripe);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns the value of {@code key}, creating it with {@code mapping} if there is none. The
+     * mapping function is called with the stripe of the key locked.
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mapping) {
+        var value = get(key);
+        if (value != null) return value;
+        expungeStaleEntries();
+        int hash = hash(key);
+        var stripe = stripeFor(hash);
+        synchronized (stripe) {
+            var table = stripe.table;
+            int index = hash & (table.length() - 1);
+            var head = table.get(index);
+            for (var e = head; e != null; e = e.next) {
+                if (e.hash == hash && e.get() == key) {
+                    value = e.value;
+                    if (value != null) return value;
+                    value = mapping.apply(key);
+                    e.value = value;
+                    return value;
+                }
+            }
+            value = mapping.apply(key);
+            if (value == null) return null;
+            table.set(index, new Entry<>(key, hash, value, head, stripe, queue));
+            if (++stripe.size > table.length() / 4 * 3) {
+                resize(stripe);
+            }
+            return value;
+        }
+    }
+
+    // Entries are copied rather than relinked, so that readers still walking the old table
+    // never follow a next pointer into a different bucket
+    private void resize(Stripe<K, V> stripe) {
+        var table = stripe.table;
+        var resized = new AtomicReferenceArray<Entry<K, V>>(table.length() * 2);
+        int mask = resized.length() - 1;
+        int size = 0;
+        for (int i = 0; i < table.length(); i++) {
+            for (var e = table.get(i); e != null; e = e.next) {
+                var key = e.get();
+                if (key == null) continue;
+                int index = e.hash & mask;
+                resized.set(index, new Entry<>(key, e.hash, e.value, resized.get(index), stripe, queue));
+                size++;
+            }
+        }
+        stripe.size = size;
+        stripe.table = resized;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void expungeStaleEntries() {
+        for (Object ref; (ref = queue.poll()) != null; ) {
+            var stale = (Entry<K, V>) ref;
+            var stripe = stale.stripe;
+            synchronized (stripe) {
+                var table = stripe.table;
+                int index = stale.hash & (table.length() - 1);
+                Entry<K, V> prev = null;
+                for (var e = table.get(index); e != null; prev = e, e = e.next) {
+                    if (e != stale) continue;
+                    if (prev == null) {
+                        table.set(index, e.next);
+                    } else {
+                        prev.next = e.next;
+                    }
+                    e.value = null;
+                    stripe.size--;
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -20,23 +20,207 @@
 #include "hook_bridge.h"
 #include "native_util.h"
 #include "lsplant.hpp"
-#include <parallel_hashmap/phmap.h>
+#include <array>
+#include <atomic>
 #include <memory>
-#include <shared_mutex>
 #include <mutex>
-#include <set>
+#include <map>
+#include <vector>
 
 using namespace lsplant;
 
 namespace {
-struct ModuleCallback {
-    jmethodID before_method;
-    jmethodID after_method;
+jclass object_class = nullptr;
+jclass object_array_class = nullptr;
+// LSPosedBridge.NativeHooker, resolved once when the natives are registered
+jclass hooker_class = nullptr;
+jmethodID hooker_init = nullptr;
+jobject hooker_callback = nullptr;
+jfieldID snapshot_field = nullptr;
+jclass invocation_target_exception_class = nullptr;
+jmethodID invocation_target_exception_ctor = nullptr;
+jmethodID get_cause = nullptr;
+jmethodID get_declaring_class = nullptr;
+jmethodID get_modifiers = nullptr;
+jmethodID get_parameter_types = nullptr;
+jmethodID get_return_type = nullptr;
+jclass method_class = nullptr;
+
+struct PrimitiveType {
+    char shorty;
+    jclass type;
+    jclass wrapper;
+    jmethodID unbox;
+    jmethodID box;
+    // Number.xxxValue(), only set for numeric types
+    jmethodID number_unbox;
+};
+
+std::array<PrimitiveType, 8> primitive_types;
+jclass void_type = nullptr;
+jclass number_class = nullptr;
+
+const PrimitiveType *PrimitiveOf(char shorty) {
+    for (auto &primitive : primitive_types) {
+        if (primitive.shorty == shorty) return &primitive;
+    }
+    return nullptr;
+}
+
+char ShortyOf(JNIEnv *env, jclass type) {
+    if (env->IsSameObject(type, void_type)) return 'V';
+    for (auto &primitive : primitive_types) {
+        if (env->IsSameObject(type, primitive.type)) return primitive.shorty;
+    }
+    return 'L';
+}
+
+// Everything needed to call a method through JNI directly, resolved once: at hook time for
+// backups, or when a special invoker is created
+struct OriginalMethod {
+    jmethodID id = nullptr;
+    jclass declaring_class = nullptr;
+    bool is_static = false;
+    // Return type first, like dex shorties
+    std::string shorty;
+    // Only set for reference parameters
+    std::vector<jclass> parameter_types;
+
+    // executable describes the signature, target is what gets called (e.g. its backup)
+    void Init(JNIEnv *env, jobject executable, jobject target) {
+        id = env->FromReflectedMethod(target);
+        auto declaring = env->CallObjectMethod(executable, get_declaring_class);
+        declaring_class = (jclass) env->NewGlobalRef(declaring);
+        env->DeleteLocalRef(declaring);
+        is_static = env->CallIntMethod(executable, get_modifiers) & 0x0008;
+        if (env->IsInstanceOf(executable, method_class)) {
+            auto return_type = (jclass) env->CallObjectMethod(executable, get_return_type);
+            shorty.push_back(ShortyOf(env, return_type));
+            env->DeleteLocalRef(return_type);
+        } else {
+            shorty.push_back('V');
+        }
+        auto params = (jobjectArray) env->CallObjectMethod(executable, get_parameter_types);
+        auto param_len = env->GetArrayLength(params);
+        parameter_types.resize(param_len, nullptr);
+        for (jsize i = 0; i < param_len; ++i) {
+            auto type = (jclass) env->GetObjectArrayElement(params, i);
+            auto c = ShortyOf(env, type);
+            shorty.push_back(c);
+            if (c == 'L') parameter_types[i] = (jclass) env->NewGlobalRef(type);
+            env->DeleteLocalRef(type);
+        }
+        env->DeleteLocalRef(params);
+    }
+
+    // Unboxes args for a direct call. Returns false whenever the arguments need anything
+    // beyond an exact match (conversions, or reporting an error), which is then left to reflection.
+    // With convert, numeric parameters take any Number, and int, long, float and double ones a
+    // Character as well, which is what invokeSpecial has always accepted.
+    bool UnboxArguments(JNIEnv *env, jobject thiz, jobjectArray args, std::vector<jvalue> &out,
+                        bool convert = false) const {
+        if (!is_static && (thiz == nullptr || !env->IsInstanceOf(thiz, declaring_class))) return false;
+        auto param_len = static_cast<jsize>(parameter_types.size());
+        if ((args ? env->GetArrayLength(args) : 0) != param_len) return false;
+        out.resize(param_len);
+        for (jsize i = 0; i < param_len; ++i) {
+            auto element = env->GetObjectArrayElement(args, i);
+            auto c = shorty[i + 1];
+            if (c == 'L') {
+                if (element && !env->IsInstanceOf(element, parameter_types[i])) return false;
+                out[i].l = element;
+                continue;
+            }
+            auto *primitive = PrimitiveOf(c);
+            if (!element) return false;
+            if (!env->IsInstanceOf(element, primitive->wrapper)) {
+                if (!convert || !ConvertArgument(env, element, c, out[i])) return false;
+                env->DeleteLocalRef(element);
+                continue;
+            }
+            switch (c) {
+                case 'Z': out[i].z = env->CallBooleanMethod(element, primitive->unbox); break;
+                case 'B': out[i].b = env->CallByteMethod(element, primitive->unbox); break;
+                case 'C': out[i].c = env->CallCharMethod(element, primitive->unbox); break;
+                case 'S': out[i].s = env->CallShortMethod(element, primitive->unbox); break;
+                case 'I': out[i].i = env->CallIntMethod(element, primitive->unbox); break;
+                case 'J': out[i].j = env->CallLongMethod(element, primitive->unbox); break;
+                case 'F': out[i].f = env->CallFloatMethod(element, primitive->unbox); break;
+                case 'D': out[i].d = env->CallDoubleMethod(element, primitive->unbox); break;
+            }
+            env->DeleteLocalRef(element);
+        }
+        return true;
+    }
+
+    static bool ConvertArgument(JNIEnv *env, jobject element, char c, jvalue &out) {
+        auto *primitive = PrimitiveOf(c);
+        if (primitive->number_unbox && env->IsInstanceOf(element, number_class)) {
+            switch (c) {
+                case 'B': out.b = env->CallByteMethod(element, primitive->number_unbox); break;
+                case 'S': out.s = env->CallShortMethod(element, primitive->number_unbox); break;
+                case 'I': out.i = env->CallIntMethod(element, primitive->number_unbox); break;
+                case 'J': out.j = env->CallLongMethod(element, primitive->number_unbox); break;
+                case 'F': out.f = env->CallFloatMethod(element, primitive->number_unbox); break;
+                case 'D': out.d = env->CallDoubleMethod(element, primitive->number_unbox); break;
+            }
+            return true;
+        }
+        auto *character = PrimitiveOf('C');
+        if (!env->IsInstanceOf(element, character->wrapper)) return false;
+        auto value = env->CallCharMethod(element, character->unbox);
+        switch (c) {
+            case 'I': out.i = value; break;
+            case 'J': out.j = value; break;
+            case 'F': out.f = value; break;
+            case 'D': out.d = value; break;
+            default: return false;
+        }
+        return true;
+    }
+
+    void Release(JNIEnv *env) {
+        if (declaring_class) env->DeleteGlobalRef(declaring_class);
+        for (auto type : parameter_types) {
+            if (type) env->DeleteGlobalRef(type);
+        }
+        declaring_class = nullptr;
+        parameter_types.clear();
+    }
+
+    jvalue Call(JNIEnv *env, jobject thiz, const jvalue *args) const {
+        jvalue r{};
+#define CALL(Type) is_static ? env->CallStatic##Type##MethodA(declaring_class, id, args) \
+                             : env->CallNonvirtual##Type##MethodA(thiz, declaring_class, id, args)
+        switch (shorty[0]) {
+            case 'Z': r.z = CALL(Boolean); break;
+            case 'B': r.b = CALL(Byte); break;
+            case 'C': r.c = CALL(Char); break;
+            case 'S': r.s = CALL(Short); break;
+            case 'I': r.i = CALL(Int); break;
+            case 'J': r.j = CALL(Long); break;
+            case 'F': r.f = CALL(Float); break;
+            case 'D': r.d = CALL(Double); break;
+            case 'L': r.l = CALL(Object); break;
+            default:
+                if (is_static) env->CallStaticVoidMethodA(declaring_class, id, args);
+                else env->CallNonvirtualVoidMethodA(thiz, declaring_class, id, args);
+                break;
+        }
+#undef CALL
+        return r;
+    }
 };
 
 struct HookItem {
+    // Writers only; readers go through the snapshot published to the hooker
+    std::mutex callbacks_lock;
     std::multimap<jint, jobject, std::greater<>> legacy_callbacks;
-    std::multimap<jint, ModuleCallback, std::greater<>> modern_callbacks;
+    std::multimap<jint, jobject, std::greater<>> modern_callbacks;
+    jobject hooker {nullptr};
+    uint64_t generation {0};
+    // Immutable once the backup is set
+    OriginalMethod original;
 private:
     std::atomic<jobject> backup {nullptr};
     static_assert(decltype(backup)::is_always_lock_free);
@@ -56,24 +240,117 @@ public:
                                        std::memory_order_acq_rel, std::memory_order_relaxed);
         backup.notify_all();
     }
+    // Rebuilds the immutable callback snapshot and hands it to the hooker, so that
+    // dispatching never needs to come back here. Caller must hold callbacks_lock.
+    void PublishSnapshot(JNIEnv *env) {
+        auto modern = env->NewObjectArray((jsize) modern_callbacks.size(), object_class, nullptr);
+        auto legacy = env->NewObjectArray((jsize) legacy_callbacks.size(), object_class, nullptr);
+        for (jsize i = 0; auto &callback: modern_callbacks) {
+            env->SetObjectArrayElement(modern, i++, callback.second);
+        }
+        for (jsize i = 0; auto &callback: legacy_callbacks) {
+            env->SetObjectArrayElement(legacy, i++, callback.second);
+        }
+        auto res = env->NewObjectArray(2, object_array_class, nullptr);
+        env->SetObjectArrayElement(res, 0, modern);
+        env->SetObjectArrayElement(res, 1, legacy);
+        env->SetObjectField(hooker, snapshot_field, res);
+        env->DeleteLocalRef(modern);
+        env->DeleteLocalRef(legacy);
+        env->DeleteLocalRef(res);
+        ++generation;
+        LOGV("Published snapshot #{} with {} modern and {} legacy callbacks", generation,
+             modern_callbacks.size(), legacy_callbacks.size());
+    }
 };
 
-template <class K, class V, class Hash = phmap::priv::hash_default_hash<K>,
-        class Eq = phmap::priv::hash_default_eq<K>,
-        class Alloc = phmap::priv::Allocator<phmap::priv::Pair<const K, V>>, size_t N = 4>
-using SharedHashMap = phmap::parallel_flat_hash_map<K, V, Hash, Eq, Alloc, N, std::shared_mutex>;
+// Insert-only open addressing map from hooked method to its HookItem. Lookups never lock:
+// they are an acquire load of the current table plus a probe. Inserts are serialized and,
+// when the table fills up, publish a bigger copy. Hook items are never erased, and replaced
+// tables are retired instead of freed because readers do not announce themselves.
+class HookedMethods {
+    struct Slot {
+        std::atomic<jmethodID> key {nullptr};
+        std::atomic<HookItem *> value {nullptr};
+    };
+    struct Table {
+        explicit Table(size_t capacity) : mask(capacity - 1), slots(new Slot[capacity]) {}
+        const size_t mask;
+        const std::unique_ptr<Slot[]> slots;
+    };
+
+    std::atomic<Table *> table_;
+    std::mutex write_lock_;
+    size_t size_ = 0;
+    std::vector<std::unique_ptr<Table>> tables_;
+    std::vector<std::unique_ptr<HookItem>> items_;
+
+    static size_t Hash(jmethodID key) {
+        // jmethodID is an aligned ArtMethod pointer; fold the high bits down
+        auto h = reinterpret_cast<uintptr_t>(key) * UINT64_C(0x9E3779B97F4A7C15);
+        return static_cast<size_t>(h >> 16);
+    }
+
+    static void Put(Table *table, jmethodID key, HookItem *value) {
+        for (auto i = Hash(key);; ++i) {
+            auto &slot = table->slots[i & table->mask];
+            if (slot.key.load(std::memory_order_relaxed) == nullptr) {
+                slot.value.store(value, std::memory_order_relaxed);
+                slot.key.store(key, std::memory_order_release);
+                return;
+            }
+        }
+    }
+
+public:
+    HookedMethods() {
+        tables_.emplace_back(std::make_unique<Table>(256));
+        table_.store(tables_.back().get(), std::memory_order_release);
+    }
 
-SharedHashMap<jmethodID, std::unique_ptr<HookItem>> hooked_methods;
+    HookItem *Find(jmethodID key) const {
+        auto *table = table_.load(std::memory_order_acquire);
+        for (auto i = Hash(key);; ++i) {
+            auto &slot = table->slots[i & table->mask];
+            auto k = slot.key.load(std::memory_order_acquire);
+            if (k == key) return slot.value.load(std::memory_order_relaxed);
+            if (k == nullptr) return nullptr;
+        }
+    }
+
+    HookItem *FindOrEmplace(jmethodID key, bool &created) {
+        created = false;
+        if (auto *item = Find(key)) return item;
+        std::lock_guard lk(write_lock_);
+        if (auto *item = Find(key)) return item;
+        auto *table = table_.load(std::memory_order_relaxed);
+        if ((size_ + 1) * 4 > (table->mask + 1) * 3) {
+            auto &grown = tables_.emplace_back(std::make_unique<Table>((table->mask + 1) * 2));
+            for (size_t i = 0; i <= table->mask; ++i) {
+                auto &slot = table->slots[i];
+                if (auto k = slot.key.load(std::memory_order_relaxed)) {
+                    Put(grown.get(), k, slot.value.load(std::memory_order_relaxed));
+                }
+            }
+            table = grown.get();
+            table_.store(table, std::memory_order_release);
+        }
+        auto *item = items_.emplace_back(std::make_unique<HookItem>()).get();
+        Put(table, key, item);
+        ++size_;
+        created = true;
+        return item;
+    }
+};
+
+HookedMethods hooked_methods;
 
 jmethodID invoke = nullptr;
-jmethodID callback_ctor = nullptr;
-jfieldID before_method_field = nullptr;
-jfieldID after_method_field = nullptr;
 }
 
 namespace lspd {
-LSP_DEF_NATIVE_METHOD(jboolean, HookBridge, hookMethod, jboolean useModernApi, jobject hookMethod,
-                      jclass hooker, jint priority, jobject callback) {
+namespace {
+bool DoHook(JNIEnv *env, jboolean useModernApi, jobject hookMethod, jint priority, jobject callback) {
     bool newHook = false;
 #ifndef NDEBUG
     struct finally {
@@ -91,72 +368,66 @@ LSP_DEF_NATIVE_METHOD(jboolean, HookBridge, hookMethod, jboolean useModernApi, j
     };
 #endif
     auto target = env->FromReflectedMethod(hookMethod);
-    HookItem * hook_item = nullptr;
-    hooked_methods.lazy_emplace_l(target, [&hook_item](auto &it) {
-        hook_item = it.second.get();
-    }, [&hook_item, &target, &newHook](const auto &ctor) {
-        auto ptr = std::make_unique<HookItem>();
-        hook_item = ptr.get();
-        ctor(target, std::move(ptr));
-        newHook = true;
-    });
+    auto *hook_item = hooked_methods.FindOrEmplace(target, newHook);
     if (newHook) {
-        auto init = env->GetMethodID(hooker, "<init>", "(Ljava/lang/reflect/Executable;)V");
-        auto callback_method = env->ToReflectedMethod(hooker, env->GetMethodID(hooker, "callback",
-                                                                               "([Ljava/lang/Object;)Ljava/lang/Object;"),
-                                                      false);
-        auto hooker_object = env->NewObject(hooker, init, hookMethod);
-        hook_item->SetBackup(lsplant::Hook(env, hookMethod, hooker_object, callback_method));
+        auto hooker_object = env->NewObject(hooker_class, hooker_init, hookMethod);
+        auto backup = lsplant::Hook(env, hookMethod, hooker_object, hooker_callback);
+        if (backup) {
+            // only a live hook needs the hooker to publish snapshots to, a failed item never does
+            hook_item->hooker = env->NewGlobalRef(hooker_object);
+            hook_item->original.Init(env, hookMethod, backup);
+        }
+        hook_item->SetBackup(backup);
         env->DeleteLocalRef(hooker_object);
     }
     jobject backup = hook_item->GetBackup();
-    if (!backup) return JNI_FALSE;
-    JNIMonitor monitor(env, backup);
+    if (!backup) return false;
+    std::lock_guard lk(hook_item->callbacks_lock);
     if (useModernApi) {
-        if (before_method_field == nullptr) {
-            auto callback_class = JNI_GetObjectClass(env, callback);
-            callback_ctor = JNI_GetMethodID(env, callback_class, "<init>", "(Ljava/lang/reflect/Method;Ljava/lang/reflect/Method;)V");
-            before_method_field = JNI_GetFieldID(env, callback_class, "beforeInvocation", "Ljava/lang/reflect/Method;");
-            after_method_field = JNI_GetFieldID(env, callback_class, "afterInvocation", "Ljava/lang/reflect/Method;");
-        }
-        auto before_method = JNI_GetObjectField(env, callback, before_method_field);
-        auto after_method = JNI_GetObjectField(env, callback, after_method_field);
-        auto callback_type = ModuleCallback {
-                .before_method = env->FromReflectedMethod(before_method),
-                .after_method = env->FromReflectedMethod(after_method),
-        };
-        hook_item->modern_callbacks.emplace(priority, callback_type);
+        hook_item->modern_callbacks.emplace(priority, env->NewGlobalRef(callback));
     } else {
         hook_item->legacy_callbacks.emplace(priority, env->NewGlobalRef(callback));
     }
-    return JNI_TRUE;
+    hook_item->PublishSnapshot(env);
+    return true;
+}
+}
+
+LSP_DEF_NATIVE_METHOD(jboolean, HookBridge, hookMethod, jboolean useModernApi, jobject hookMethod,
+                      jint priority, jobject callback) {
+    return DoHook(env, useModernApi, hookMethod, priority, callback) ? JNI_TRUE : JNI_FALSE;
+}
+
+// One JNI transition for all methods; lsplant has no batched install, so each is still hooked
+// on its own
+LSP_DEF_NATIVE_METHOD(jbooleanArray, HookBridge, hookMethods, jboolean useModernApi, jobjectArray hookMethods,
+                      jint priority, jobject callback) {
+    auto len = env->GetArrayLength(hookMethods);
+    std::vector<jboolean> results(len, JNI_FALSE);
+    for (jsize i = 0; i < len; ++i) {
+        auto hookMethod = env->GetObjectArrayElement(hookMethods, i);
+        results[i] = DoHook(env, useModernApi, hookMethod, priority, callback) ? JNI_TRUE : JNI_FALSE;
+        env->DeleteLocalRef(hookMethod);
+    }
+    auto res = env->NewBooleanArray(len);
+    env->SetBooleanArrayRegion(res, 0, len, results.data());
+    return res;
 }
 
 LSP_DEF_NATIVE_METHOD(jboolean, HookBridge, unhookMethod, jboolean useModernApi, jobject hookMethod, jobject callback) {
     auto target = env->FromReflectedMethod(hookMethod);
-    HookItem * hook_item = nullptr;
-    hooked_methods.if_contains(target, [&hook_item](const auto &it) {
-        hook_item = it.second.get();
-    });
+    auto *hook_item = hooked_methods.Find(target);
     if (!hook_item) return JNI_FALSE;
     jobject backup = hook_item->GetBackup();
     if (!backup) return JNI_FALSE;
-    JNIMonitor monitor(env, backup);
-    if (useModernApi) {
-        auto before_method = JNI_GetObjectField(env, callback, before_method_field);
-        auto before = env->FromReflectedMethod(before_method);
-        for (auto i = hook_item->modern_callbacks.begin(); i != hook_item->modern_callbacks.end(); ++i) {
-            if (before == i->second.before_method) {
-                hook_item->modern_callbacks.erase(i);
-                return JNI_TRUE;
-            }
-        }
-    } else {
-        for (auto i = hook_item->legacy_callbacks.begin(); i != hook_item->legacy_callbacks.end(); ++i) {
-            if (env->IsSameObject(i->second, callback)) {
-                hook_item->legacy_callbacks.erase(i);
-                return JNI_TRUE;
-            }
+    std::lock_guard lk(hook_item->callbacks_lock);
+    auto &callbacks = useModernApi ? hook_item->modern_callbacks : hook_item->legacy_callbacks;
+    for (auto i = callbacks.begin(); i != callbacks.end(); ++i) {
+        if (env->IsSameObject(i->second, callback)) {
+            env->DeleteGlobalRef(i->second);
+            callbacks.erase(i);
+            hook_item->PublishSnapshot(env);
+            return JNI_TRUE;
         }
     }
     return JNI_FALSE;
@@ -167,123 +438,114 @@ LSP_DEF_NATIVE_METHOD(jboolean, HookBridge, deoptimizeMethod, jobject hookMethod
     return lsplant::Deoptimize(env, hookMethod);
 }
 
-LSP_DEF_NATIVE_METHOD(jobject, HookBridge, invokeOriginalMethod, jobject hookMethod,
+jvalue InvokeOriginal(JNIEnv *env, jobject method, jboolean wrap, jobject thiz, jobjectArray args, char expected) {
+    auto *hook_item = hooked_methods.Find(env->FromReflectedMethod(method));
+    jobject backup = hook_item ? hook_item->GetBackup() : nullptr;
+    if (backup && hook_item->original.shorty[0] == expected) {
+        std::vector<jvalue> a;
+        if (hook_item->original.UnboxArguments(env, thiz, args, a)) {
+            auto res = hook_item->original.Call(env, thiz, a.data());
+            if (wrap && env->ExceptionCheck()) {
+                auto throwable = env->ExceptionOccurred();
+                env->ExceptionClear();
+                env->Throw((jthrowable) env->NewObject(invocation_target_exception_class,
+                                                       invocation_target_exception_ctor, throwable));
+            }
+            return res;
+        }
+        if (env->ExceptionCheck()) return {};
+    }
+    // Conversions and error reporting are left to Method.invoke
+    jvalue res{};
+    auto result = env->CallObjectMethod(backup ? backup : method, invoke, thiz, args);
+    if (auto throwable = env->ExceptionOccurred()) {
+        if (!wrap && env->IsInstanceOf(throwable, invocation_target_exception_class)) {
+            env->ExceptionClear();
+            env->Throw((jthrowable) env->CallObjectMethod(throwable, get_cause));
+        }
+        return res;
+    }
+    if (expected == 'L') {
+        res.l = result;
+    } else if (auto *primitive = PrimitiveOf(expected)) {
+        if (!env->IsInstanceOf(result, primitive->wrapper)) {
+            env->ThrowNew(env->FindClass("java/lang/IllegalArgumentException"), "return type mismatch");
+            return res;
+        }
+        switch (expected) {
+            case 'Z': res.z = env->CallBooleanMethod(result, primitive->unbox); break;
+            case 'B': res.b = env->CallByteMethod(result, primitive->unbox); break;
+            case 'C': res.c = env->CallCharMethod(result, primitive->unbox); break;
+            case 'S': res.s = env->CallShortMethod(result, primitive->unbox); break;
+            case 'I': res.i = env->CallIntMethod(result, primitive->unbox); break;
+            case 'J': res.j = env->CallLongMethod(result, primitive->unbox); break;
+            case 'F': res.f = env->CallFloatMethod(result, primitive->unbox); break;
+            case 'D': res.d = env->CallDoubleMethod(result, primitive->unbox); break;
+        }
+    }
+    return res;
+}
+
+#define DEF_INVOKE_ORIGINAL(ret, suffix, field) \
+LSP_DEF_NATIVE_METHOD(ret, HookBridge, invokeOriginal##suffix, jobject method, jboolean wrap, \
+                      jobject thiz, jobjectArray args) { \
+    return InvokeOriginal(env, method, wrap, thiz, args, #suffix[0]).field; \
+}
+
+DEF_INVOKE_ORIGINAL(jboolean, Z, z)
+DEF_INVOKE_ORIGINAL(jbyte, B, b)
+DEF_INVOKE_ORIGINAL(jchar, C, c)
+DEF_INVOKE_ORIGINAL(jshort, S, s)
+DEF_INVOKE_ORIGINAL(jint, I, i)
+DEF_INVOKE_ORIGINAL(jlong, J, j)
+DEF_INVOKE_ORIGINAL(jfloat, F, f)
+DEF_INVOKE_ORIGINAL(jdouble, D, d)
+DEF_INVOKE_ORIGINAL(jobject, L, l)
+
+LSP_DEF_NATIVE_METHOD(void, HookBridge, invokeOriginalV, jobject method, jboolean wrap,
                       jobject thiz, jobjectArray args) {
-    auto target = env->FromReflectedMethod(hookMethod);
-    HookItem * hook_item = nullptr;
-    hooked_methods.if_contains(target, [&hook_item](const auto &it) {
-        hook_item = it.second.get();
-    });
-    return env->CallObjectMethod(hook_item ? hook_item->GetBackup() : hookMethod, invoke, thiz, args);
+    InvokeOriginal(env, method, wrap, thiz, args, 'V');
 }
 
+#undef DEF_INVOKE_ORIGINAL
+
 LSP_DEF_NATIVE_METHOD(jobject, HookBridge, allocateObject, jclass cls) {
     return env->AllocObject(cls);
 }
 
-LSP_DEF_NATIVE_METHOD(jobject, HookBridge, invokeSpecialMethod, jobject method, jcharArray shorty,
-                      jclass cls, jobject thiz, jobjectArray args) {
-    static auto* const get_int = env->GetMethodID(env->FindClass("java/lang/Integer"), "intValue", "()I");
-    static auto* const get_double = env->GetMethodID(env->FindClass("java/lang/Double"), "doubleValue", "()D");
-    static auto* const get_long = env->GetMethodID(env->FindClass("java/lang/Long"), "longValue", "()J");
-    static auto* const get_float = env->GetMethodID(env->FindClass("java/lang/Float"), "floatValue", "()F");
-    static auto* const get_short = env->GetMethodID(env->FindClass("java/lang/Short"), "shortValue", "()S");
-    static auto* const get_byte = env->GetMethodID(env->FindClass("java/lang/Byte"), "byteValue", "()B");
-    static auto* const get_char = env->GetMethodID(env->FindClass("java/lang/Character"), "charValue", "()C");
-    static auto* const get_boolean = env->GetMethodID(env->FindClass("java/lang/Boolean"), "booleanValue", "()Z");
-    static auto* const set_int = env->GetStaticMethodID(env->FindClass("java/lang/Integer"), "valueOf", "(I)Ljava/lang/Integer;");
-    static auto* const set_double = env->GetStaticMethodID(env->FindClass("java/lang/Double"), "valueOf", "(D)Ljava/lang/Double;");
-    static auto* const set_long = env->GetStaticMethodID(env->FindClass("java/lang/Long"), "valueOf", "(J)Ljava/lang/Long;");
-    static auto* const set_float = env->GetStaticMethodID(env->FindClass("java/lang/Float"), "valueOf", "(F)Ljava/lang/Float;");
-    static auto* const set_short = env->GetStaticMethodID(env->FindClass("java/lang/Short"), "valueOf", "(S)Ljava/lang/Short;");
-    static auto* const set_byte = env->GetStaticMethodID(env->FindClass("java/lang/Byte"), "valueOf", "(B)Ljava/lang/Byte;");
-    static auto* const set_char = env->GetStaticMethodID(env->FindClass("java/lang/Character"), "valueOf", "(C)Ljava/lang/Character;");
-    static auto* const set_boolean = env->GetStaticMethodID(env->FindClass("java/lang/Boolean"), "valueOf", "(Z)Ljava/lang/Boolean;");
-
-    auto target = env->FromReflectedMethod(method);
-    auto param_len = env->GetArrayLength(shorty) - 1;
-    if (env->GetArrayLength(args) != param_len) {
-        env->ThrowNew(env->FindClass("java/lang/IllegalArgumentException"), "args.length != parameters.length");
-        return nullptr;
-    }
+LSP_DEF_NATIVE_METHOD(jlong, HookBridge, resolveSpecialInvoker, jobject method) {
+    auto *invoker = new OriginalMethod();
+    invoker->Init(env, method, method);
+    return reinterpret_cast<jlong>(invoker);
+}
+
+LSP_DEF_NATIVE_METHOD(void, HookBridge, freeSpecialInvoker, jlong handle) {
+    auto *invoker = reinterpret_cast<OriginalMethod *>(handle);
+    invoker->Release(env);
+    delete invoker;
+}
+
+LSP_DEF_NATIVE_METHOD(jobject, HookBridge, invokeSpecial, jobject owner, jlong handle, jobject thiz, jobjectArray args) {
+    const auto *invoker = reinterpret_cast<const OriginalMethod *>(handle);
     if (thiz == nullptr) {
         env->ThrowNew(env->FindClass("java/lang/IllegalArgumentException"), "this == null");
         return nullptr;
     }
-    std::vector<jvalue> a(param_len);
-    auto *const shorty_char = env->GetCharArrayElements(shorty, nullptr);
-    for (jint i = 0; i != param_len; ++i) {
-        jobject element;
-        switch(shorty_char[i + 1]) {
-            case 'I':
-                a[i].i = env->CallIntMethod(element = env->GetObjectArrayElement(args, i), get_int);
-                break;
-            case 'D':
-                a[i].d = env->CallDoubleMethod(element = env->GetObjectArrayElement(args, i), get_double);
-                break;
-            case 'J':
-                a[i].j = env->CallLongMethod(element = env->GetObjectArrayElement(args, i), get_long);
-                break;
-            case 'F':
-                a[i].f = env->CallFloatMethod(element = env->GetObjectArrayElement(args, i), get_float);
-                break;
-            case 'S':
-                a[i].s = env->CallShortMethod(element = env->GetObjectArrayElement(args, i), get_short);
-                break;
-            case 'B':
-                a[i].b = env->CallByteMethod(element = env->GetObjectArrayElement(args, i), get_byte);
-                break;
-            case 'C':
-                a[i].c = env->CallCharMethod(element = env->GetObjectArrayElement(args, i), get_char);
-                break;
-            case 'Z':
-                a[i].z = env->CallBooleanMethod(element = env->GetObjectArrayElement(args, i), get_boolean);
-                break;
-            default:
-            case 'L':
-                a[i].l = env->GetObjectArrayElement(args, i);
-                element = nullptr;
-                break;
+    std::vector<jvalue> a;
+    if (!invoker->UnboxArguments(env, thiz, args, a, true)) {
+        if (!env->ExceptionCheck()) {
+            env->ThrowNew(env->FindClass("java/lang/IllegalArgumentException"), "argument type mismatch");
         }
-        if (element) env->DeleteLocalRef(element);
-        if (env->ExceptionCheck()) return nullptr;
+        return nullptr;
     }
-    jobject value = nullptr;
-    switch(shorty_char[0]) {
-        case 'I':
-            value = env->CallStaticObjectMethod(jclass{nullptr}, set_int, env->CallNonvirtualIntMethodA(thiz, cls, target, a.data()));
-            break;
-        case 'D':
-            value = env->CallStaticObjectMethod(jclass{nullptr}, set_double, env->CallNonvirtualDoubleMethodA(thiz, cls, target, a.data()));
-            break;
-        case 'J':
-            value = env->CallStaticObjectMethod(jclass{nullptr}, set_long, env->CallNonvirtualLongMethodA(thiz, cls, target, a.data()));
-            break;
-        case 'F':
-            value = env->CallStaticObjectMethod(jclass{nullptr}, set_float, env->CallNonvirtualFloatMethodA(thiz, cls, target, a.data()));
-            break;
-        case 'S':
-            value = env->CallStaticObjectMethod(jclass{nullptr}, set_short, env->CallNonvirtualShortMethodA(thiz, cls, target, a.data()));
-            break;
-        case 'B':
-            value = env->CallStaticObjectMethod(jclass{nullptr}, set_byte, env->CallNonvirtualByteMethodA(thiz, cls, target, a.data()));
-            break;
-        case 'C':
-            value = env->CallStaticObjectMethod(jclass{nullptr}, set_char, env->CallNonvirtualCharMethodA(thiz, cls, target, a.data()));
-            break;
-        case 'Z':
-            value = env->CallStaticObjectMethod(jclass{nullptr}, set_boolean, env->CallNonvirtualBooleanMethodA(thiz, cls, target, a.data()));
-            break;
-        case 'L':
-            value = env->CallNonvirtualObjectMethodA(thiz, cls, target, a.data());
-            break;
-        default:
-        case 'V':
-            env->CallNonvirtualVoidMethodA(thiz, cls, target, a.data());
-            break;
+    auto res = invoker->Call(env, thiz, a.data());
+    if (env->ExceptionCheck()) return nullptr;
+    auto c = invoker->shorty[0];
+    if (c == 'L') return res.l;
+    if (auto *primitive = PrimitiveOf(c)) {
+        return env->CallStaticObjectMethodA(primitive->wrapper, primitive->box, &res);
     }
-    env->ReleaseCharArrayElements(shorty, shorty_char, JNI_ABORT);
-    return value;
+    return nullptr;
 }
 
 LSP_DEF_NATIVE_METHOD(jboolean, HookBridge, instanceOf, jobject object, jclass expected_class) {
@@ -294,44 +556,27 @@ LSP_DEF_NATIVE_METHOD(jboolean, HookBridge, setTrusted, jobject cookie) {
     return lsplant::MakeDexFileTrusted(env, cookie);
 }
 
-LSP_DEF_NATIVE_METHOD(jobjectArray, HookBridge, callbackSnapshot, jclass callback_class, jobject method) {
-    auto target = env->FromReflectedMethod(method);
-    HookItem *hook_item = nullptr;
-    hooked_methods.if_contains(target, [&hook_item](const auto &it) {
-        hook_item = it.second.get();
-    });
-    if (!hook_item) return nullptr;
-    jobject backup = hook_item->GetBackup();
-    if (!backup) return nullptr;
-    JNIMonitor monitor(env, backup);
-
-    auto res = env->NewObjectArray(2, env->FindClass("[Ljava/lang/Object;"), nullptr);
-    auto modern = env->NewObjectArray((jsize) hook_item->modern_callbacks.size(), env->FindClass("java/lang/Object"), nullptr);
-    auto legacy = env->NewObjectArray((jsize) hook_item->legacy_callbacks.size(), env->FindClass("java/lang/Object"), nullptr);
-    for (jsize i = 0; auto callback: hook_item->modern_callbacks) {
-        auto before_method = JNI_ToReflectedMethod(env, clazz, callback.second.before_method, JNI_TRUE);
-        auto after_method = JNI_ToReflectedMethod(env, clazz, callback.second.after_method, JNI_TRUE);
-        auto callback_object = JNI_NewObject(env, callback_class, callback_ctor, before_method, after_method);
-        env->SetObjectArrayElement(modern, i++, env->NewLocalRef(callback_object));
-    }
-    for (jsize i = 0; auto callback: hook_item->legacy_callbacks) {
-        env->SetObjectArrayElement(legacy, i++, env->NewLocalRef(callback.second));
-    }
-    env->SetObjectArrayElement(res, 0, modern);
-    env->SetObjectArrayElement(res, 1, legacy);
-    return res;
-}
-
 static JNINativeMethod gMethods[] = {
-    LSP_NATIVE_METHOD(HookBridge, hookMethod, "(ZLjava/lang/reflect/Executable;Ljava/lang/Class;ILjava/lang/Object;)Z"),
+    LSP_NATIVE_METHOD(HookBridge, hookMethod, "(ZLjava/lang/reflect/Executable;ILjava/lang/Object;)Z"),
+    LSP_NATIVE_METHOD(HookBridge, hookMethods, "(Z[Ljava/lang/reflect/Executable;ILjava/lang/Object;)[Z"),
     LSP_NATIVE_METHOD(HookBridge, unhookMethod, "(ZLjava/lang/reflect/Executable;Ljava/lang/Object;)Z"),
     LSP_NATIVE_METHOD(HookBridge, deoptimizeMethod, "(Ljava/lang/reflect/Executable;)Z"),
-    LSP_NATIVE_METHOD(HookBridge, invokeOriginalMethod, "(Ljava/lang/reflect/Executable;Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;"),
-    LSP_NATIVE_METHOD(HookBridge, invokeSpecialMethod, "(Ljava/lang/reflect/Executable;[CLjava/lang/Class;Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;"),
+    LSP_NATIVE_METHOD(HookBridge, invokeOriginalZ, "(Ljava/lang/reflect/Executable;ZLjava/lang/Object;[Ljava/lang/Object;)Z"),
+    LSP_NATIVE_METHOD(HookBridge, invokeOriginalB, "(Ljava/lang/reflect/Executable;ZLjava/lang/Object;[Ljava/lang/Object;)B"),
+    LSP_NATIVE_METHOD(HookBridge, invokeOriginalC, "(Ljava/lang/reflect/Executable;ZLjava/lang/Object;[Ljava/lang/Object;)C"),
+    LSP_NATIVE_METHOD(HookBridge, invokeOriginalS, "(Ljava/lang/reflect/Executable;ZLjava/lang/Object;[Ljava/lang/Object;)S"),
+    LSP_NATIVE_METHOD(HookBridge, invokeOriginalI, "(Ljava/lang/reflect/Executable;ZLjava/lang/Object;[Ljava/lang/Object;)I"),
+    LSP_NATIVE_METHOD(HookBridge, invokeOriginalJ, "(Ljava/lang/reflect/Executable;ZLjava/lang/Object;[Ljava/lang/Object;)J"),
+    LSP_NATIVE_METHOD(HookBridge, invokeOriginalF, "(Ljava/lang/reflect/Executable;ZLjava/lang/Object;[Ljava/lang/Object;)F"),
+    LSP_NATIVE_METHOD(HookBridge, invokeOriginalD, "(Ljava/lang/reflect/Executable;ZLjava/lang/Object;[Ljava/lang/Object;)D"),
+    LSP_NATIVE_METHOD(HookBridge, invokeOriginalL, "(Ljava/lang/reflect/Executable;ZLjava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;"),
+    LSP_NATIVE_METHOD(HookBridge, invokeOriginalV, "(Ljava/lang/reflect/Executable;ZLjava/lang/Object;[Ljava/lang/Object;)V"),
+    LSP_NATIVE_METHOD(HookBridge, resolveSpecialInvoker, "(Ljava/lang/reflect/Executable;)J"),
+    LSP_NATIVE_METHOD(HookBridge, freeSpecialInvoker, "(J)V"),
+    LSP_NATIVE_METHOD(HookBridge, invokeSpecial, "(Ljava/lang/Object;JLjava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;"),
     LSP_NATIVE_METHOD(HookBridge, allocateObject, "(Ljava/lang/Class;)Ljava/lang/Object;"),
     LSP_NATIVE_METHOD(HookBridge, instanceOf, "(Ljava/lang/Object;Ljava/lang/Class;)Z"),
     LSP_NATIVE_METHOD(HookBridge, setTrusted, "(Ljava/lang/Object;)Z"),
-    LSP_NATIVE_METHOD(HookBridge, callbackSnapshot, "(Ljava/lang/Class;Ljava/lang/reflect/Executable;)[[Ljava/lang/Object;"),
 };
 
 void RegisterHookBridge(JNIEnv *env) {
@@ -339,7 +584,78 @@ void RegisterHookBridge(JNIEnv *env) {
     invoke = env->GetMethodID(
             method, "invoke",
             "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;");
+    method_class = (jclass) env->NewGlobalRef(method);
+    get_return_type = env->GetMethodID(method, "getReturnType", "()Ljava/lang/Class;");
     env->DeleteLocalRef(method);
+    auto executable = env->FindClass("java/lang/reflect/Executable");
+    get_declaring_class = env->GetMethodID(executable, "getDeclaringClass", "()Ljava/lang/Class;");
+    get_modifiers = env->GetMethodID(executable, "getModifiers", "()I");
+    get_parameter_types = env->GetMethodID(executable, "getParameterTypes", "()[Ljava/lang/Class;");
+    env->DeleteLocalRef(executable);
+    auto ite = env->FindClass("java/lang/reflect/InvocationTargetException");
+    invocation_target_exception_class = (jclass) env->NewGlobalRef(ite);
+    invocation_target_exception_ctor = env->GetMethodID(ite, "<init>", "(Ljava/lang/Throwable;)V");
+    get_cause = env->GetMethodID(ite, "getCause", "()Ljava/lang/Throwable;");
+    env->DeleteLocalRef(ite);
+    struct {
+        char shorty;
+        const char *wrapper;
+        const char *unbox;
+        const char *unbox_sig;
+        const char *box_sig;
+        bool numeric;
+    } constexpr primitives[] = {
+            {'Z', "java/lang/Boolean", "booleanValue", "()Z", "(Z)Ljava/lang/Boolean;", false},
+            {'B', "java/lang/Byte", "byteValue", "()B", "(B)Ljava/lang/Byte;", true},
+            {'C', "java/lang/Character", "charValue", "()C", "(C)Ljava/lang/Character;", false},
+            {'S', "java/lang/Short", "shortValue", "()S", "(S)Ljava/lang/Short;", true},
+            {'I', "java/lang/Integer", "intValue", "()I", "(I)Ljava/lang/Integer;", true},
+            {'J', "java/lang/Long", "longValue", "()J", "(J)Ljava/lang/Long;", true},
+            {'F', "java/lang/Float", "floatValue", "()F", "(F)Ljava/lang/Float;", true},
+            {'D', "java/lang/Double", "doubleValue", "()D", "(D)Ljava/lang/Double;", true},
+    };
+    auto number = env->FindClass("java/lang/Number");
+    number_class = (jclass) env->NewGlobalRef(number);
+    for (size_t i = 0; auto &primitive : primitives) {
+        auto wrapper = env->FindClass(primitive.wrapper);
+        auto type = env->GetStaticObjectField(wrapper, env->GetStaticFieldID(wrapper, "TYPE", "Ljava/lang/Class;"));
+        primitive_types[i++] = {
+                .shorty = primitive.shorty,
+                .type = (jclass) env->NewGlobalRef(type),
+                .wrapper = (jclass) env->NewGlobalRef(wrapper),
+                .unbox = env->GetMethodID(wrapper, primitive.unbox, primitive.unbox_sig),
+                .box = env->GetStaticMethodID(wrapper, "valueOf", primitive.box_sig),
+                .number_unbox = primitive.numeric
+                        ? env->GetMethodID(number, primitive.unbox, primitive.unbox_sig) : nullptr,
+        };
+        env->DeleteLocalRef(type);
+        env->DeleteLocalRef(wrapper);
+    }
+    env->DeleteLocalRef(number);
+    auto void_wrapper = env->FindClass("java/lang/Void");
+    auto type = env->GetStaticObjectField(void_wrapper, env->GetStaticFieldID(void_wrapper, "TYPE", "Ljava/lang/Class;"));
+    void_type = (jclass) env->NewGlobalRef(type);
+    env->DeleteLocalRef(type);
+    env->DeleteLocalRef(void_wrapper);
+    auto object = env->FindClass("java/lang/Object");
+    object_class = (jclass) env->NewGlobalRef(object);
+    env->DeleteLocalRef(object);
+    auto object_array = env->FindClass("[Ljava/lang/Object;");
+    object_array_class = (jclass) env->NewGlobalRef(object_array);
+    env->DeleteLocalRef(object_array);
+    auto hooker = Context::GetInstance()->FindClassFromCurrentLoader(env, "org.lsposed.lspd.impl.LSPosedBridge$NativeHooker");
+    if (!hooker) {
+        LOGE("NativeHooker class not found");
+        return;
+    }
+    hooker_class = (jclass) env->NewGlobalRef(hooker.get());
+    hooker_init = env->GetMethodID(hooker_class, "<init>", "(Ljava/lang/reflect/Executable;)V");
+    auto callback = env->ToReflectedMethod(hooker_class, env->GetMethodID(hooker_class, "callback",
+                                                                          "([Ljava/lang/Object;)Ljava/lang/Object;"),
+                                           false);
+    hooker_callback = env->NewGlobalRef(callback);
+    env->DeleteLocalRef(callback);
+    snapshot_field = env->GetFieldID(hooker_class, "snapshot", "[[Ljava/lang/Object;");
     REGISTER_LSP_NATIVE_METHODS(HookBridge);
 }
 } // namespace lspd
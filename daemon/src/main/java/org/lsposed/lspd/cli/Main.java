@@ -14,6 +14,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.lsposed.lspd.models.Application;
+import org.lsposed.lspd.models.HookMetric;
 import org.lsposed.lspd.ICLIService;
 import org.lsposed.lspd.service.ILSPApplicationService;
 import org.lsposed.lspd.util.SignInfo;
@@ -573,7 +574,82 @@ class RestoreCommand implements Callable<Integer> {
     }
 }
 
-@CommandLine.Command(name = CMDNAME, subcommands = {LogCommand.class, BackupCommand.class, ModulesCommand.class, RestoreCommand.class, ScopeCommand.class, StatusCommand.class}, version = "0.2")
+@CommandLine.Command(name = "metrics")
+class MetricsCommand implements Callable<Integer> {
+    @CommandLine.Option(names = {"-h", "--help", "help"}, usageHelp = true, description = "display this help message")
+    boolean usageHelpRequested;
+    @CommandLine.ArgGroup(exclusive = true)
+    MetricsOpts objArgs = new MetricsOpts();
+
+    static class MetricsOpts {
+        @CommandLine.Option(names = {"-e", "--enable"}, description = "start recording hook metrics in all processes", required = true)
+        boolean bEnable;
+        @CommandLine.Option(names = {"-d", "--disable"}, description = "stop recording hook metrics", required = true)
+        boolean bDisable;
+    }
+
+    @CommandLine.Option(names = {"-n", "--limit"}, description = "print only the n most expensive entries")
+    int limit = Integer.MAX_VALUE;
+
+    private static final String[] PHASES = {"before", "after", "original"};
+
+    @Override
+    public Integer call() throws RemoteException {
+        ICLIService manager = Main.getManager();
+        if (objArgs.bEnable || objArgs.bDisable) {
+            manager.setHookMetricsEnabled(objArgs.bEnable);
+            return ERRCODES.NOERROR.ordinal();
+        }
+        if (!manager.isHookMetricsEnabled()) {
+            System.err.println("Hook metrics are disabled, enable them with -e");
+        }
+
+        var metrics = new ArrayList<HookMetric>();
+        var counters = new ArrayList<HookMetric>();
+        for (var metric : manager.getHookMetrics()) {
+            (metric.phase == HookMetric.PHASE_COUNTER ? counters : metrics).add(metric);
+        }
+        metrics.sort((a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+        var sFmt = "%-8s %10s %12s %10s %10s %10s %5s  %s %s %s";
+        System.out.println(String.format(sFmt, "phase", "calls", "total(ms)", "mean(us)", "p50(us)", "p99(us)", "procs", "method", "module", "hooker"));
+        for (var metric : metrics.subList(0, Math.min(limit, metrics.size()))) {
+            System.out.println(String.format(sFmt, PHASES[metric.phase], metric.count,
+                    String.format("%.3f", metric.totalNanos / 1e6),
+                    String.format("%.1f", metric.totalNanos / 1e3 / metric.count),
+                    percentile(metric, 0.5), percentile(metric, 0.99), metric.processes,
+                    metric.method, metric.module == null ? "" : metric.module,
+                    metric.hooker == null ? "" : metric.hooker));
+        }
+        if (!counters.isEmpty()) {
+            counters.sort((a, b) -> a.method.equals(b.method) ? a.hooker.compareTo(b.hooker) : a.method.compareTo(b.method));
+            var cFmt = "%-8s %10s %5s  %s %s";
+            System.out.println();
+            System.out.println(String.format(cFmt, "counter", "count", "procs", "method", "name"));
+            for (var counter : counters) {
+                System.out.println(String.format(cFmt, "", counter.count, counter.processes, counter.method, counter.hooker));
+            }
+        }
+        return ERRCODES.NOERROR.ordinal();
+    }
+
+    // upper bound of the histogram bucket holding the percentile, as the buckets keep no values
+    private static String percentile(HookMetric metric, double p) {
+        long rank = (long) Math.ceil(metric.count * p);
+        long seen = 0;
+        for (int i = 0; i < metric.buckets.length; i++) {
+            seen += metric.buckets[i];
+            if (seen >= rank) {
+                if (i == metric.buckets.length - 1) {
+                    return ">" + ((1L << (i + HookMetric.BUCKET_SHIFT)) / 1000);
+                }
+                return String.valueOf((1L << (i + 1 + HookMetric.BUCKET_SHIFT)) / 1000.0);
+            }
+        }
+        return "-";
+    }
+}
+
+@CommandLine.Command(name = CMDNAME, subcommands = {LogCommand.class, BackupCommand.class, MetricsCommand.class, ModulesCommand.class, RestoreCommand.class, ScopeCommand.class, StatusCommand.class}, version = "0.2")
 public class Main implements Runnable {
     @CommandLine.Option(names = {"-V", "--version", "version"}, versionHelp = true, description = "display version info")
     boolean versionInfoRequested;
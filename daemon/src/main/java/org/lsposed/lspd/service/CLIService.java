@@ -42,6 +42,7 @@ import org.lsposed.daemon.BuildConfig;
 import org.lsposed.daemon.R;
 import org.lsposed.lspd.ICLIService;
 import org.lsposed.lspd.models.Application;
+import org.lsposed.lspd.models.HookMetric;
 import org.lsposed.lspd.util.FakeContext;
 import org.lsposed.lspd.util.SignInfo;
 
@@ -340,4 +341,19 @@ public class CLIService extends ICLIService.Stub {
         }
         ConfigManager.getInstance().setAutomaticAdd(packageName, add);
     }
+
+    @Override
+    public boolean isHookMetricsEnabled() {
+        return HookMetricsCollector.isEnabled();
+    }
+
+    @Override
+    public void setHookMetricsEnabled(boolean enabled) {
+        HookMetricsCollector.setEnabled(enabled);
+    }
+
+    @Override
+    public List<HookMetric> getHookMetrics() {
+        return HookMetricsCollector.collect();
+    }
 }
@@ -70,6 +70,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Properties;
 import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -349,11 +350,22 @@ public class ConfigFileManager {
 
     private static void readDexes(ZipFile apkFile, List<SharedMemory> preLoadedDexes,
                                   boolean obfuscate) {
+        var apk = new File(apkFile.getName());
         int secondary = 2;
         for (var dexFile = apkFile.getEntry("classes.dex"); dexFile != null;
              dexFile = apkFile.getEntry("classes" + secondary + ".dex"), secondary++) {
+            var key = obfuscate ? null : DexCache.key(apk, dexFile);
+            if (key != null) {
+                var cached = DexCache.get(key);
+                if (cached != null) {
+                    preLoadedDexes.add(cached);
+                    continue;
+                }
+            }
             try (var is = apkFile.getInputStream(dexFile)) {
-                preLoadedDexes.add(readDex(is, obfuscate));
+                var memory = readDex(is, obfuscate);
+                if (key != null) DexCache.put(key, memory);
+                preLoadedDexes.add(memory);
             } catch (IOException | ErrnoException e) {
                 Log.w(TAG, "Can not load " + dexFile + " in " + apkFile, e);
             }
@@ -376,6 +388,19 @@ public class ConfigFileManager {
         }
     }
 
+    private static boolean readScopedCallbacks(ZipFile apkFile) {
+        var propEntry = apkFile.getEntry("META-INF/xposed/module.prop");
+        if (propEntry == null) return false;
+        try (var in = apkFile.getInputStream(propEntry)) {
+            var prop = new Properties();
+            prop.load(in);
+            return "true".equals(prop.getProperty("scopedCallbacks"));
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "Can not read " + propEntry, e);
+            return false;
+        }
+    }
+
     @Nullable
     static PreLoadedApk loadModule(String path, boolean obfuscate) {
         if (path == null) return null;
@@ -393,6 +418,7 @@ public class ConfigFileManager {
             } else {
                 file.legacy = false;
                 readName(apkFile, "META-INF/xposed/native_init.list", moduleLibraryNames);
+                file.scopedCallbacks = readScopedCallbacks(apkFile);
             }
         } catch (IOException e) {
             Log.e(TAG, "Can not open " + path, e);
@@ -48,6 +48,7 @@ import android.system.ErrnoException;
 import android.system.Os;
 import android.util.Log;
 import android.util.Pair;
+import android.util.SparseArray;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -72,6 +73,7 @@ import java.nio.file.attribute.PosixFilePermissions;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -107,6 +109,8 @@ public class ConfigManager {
 
     private final Handler cacheHandler;
 
+    private final PackageEventCoalescer packageEvents;
+
     private long lastModuleCacheTime = 0;
     private long requestModuleCacheTime = 0;
 
@@ -139,6 +143,83 @@ public class ConfigManager {
         }
     }
 
+    /**
+     * Immutable snapshot of the scope cache by uid.
+     * <p>
+     * Process starts and uid events look up a uid and then compare the few process names it has,
+     * without allocating a {@link ProcessScope} or hashing the process name. The modules are split
+     * into modern and legacy ones here, instead of on every process start. The index is built
+     * from a complete cache and swapped in whole, so lookups never see a rebuild in progress.
+     */
+    private static final class ScopeIndex {
+        static final ScopeIndex EMPTY = new ScopeIndex(new SparseArray<>());
+
+        private static final class UidScope {
+            // interned, the modules of processNames[i] are modules[i], split by API
+            final String[] processNames;
+            final List<Module>[] modules;
+            final List<Module>[] legacyModules;
+
+            @SuppressWarnings("unchecked")
+            UidScope(int size) {
+                processNames = new String[size];
+                modules = (List<Module>[]) new List[size];
+                legacyModules = (List<Module>[]) new List[size];
+            }
+        }
+
+        private final SparseArray<UidScope> scopes;
+
+        private ScopeIndex(SparseArray<UidScope> scopes) {
+            this.scopes = scopes;
+        }
+
+        static ScopeIndex of(Map<ProcessScope, List<Module>> cachedScope) {
+            var byUid = new SparseArray<List<Map.Entry<ProcessScope, List<Module>>>>();
+            for (var entry : cachedScope.entrySet()) {
+                var entries = byUid.get(entry.getKey().uid);
+                if (entries == null) {
+                    entries = new ArrayList<>(1);
+                    byUid.put(entry.getKey().uid, entries);
+                }
+                entries.add(entry);
+            }
+            var scopes = new SparseArray<UidScope>(byUid.size());
+            for (int i = 0; i < byUid.size(); i++) {
+                var entries = byUid.valueAt(i);
+                var scope = new UidScope(entries.size());
+                for (int j = 0; j < entries.size(); j++) {
+                    var modules = new ArrayList<Module>();
+                    var legacyModules = new ArrayList<Module>();
+                    for (var module : entries.get(j).getValue()) {
+                        (module.file.legacy ? legacyModules : modules).add(module);
+                    }
+                    scope.processNames[j] = entries.get(j).getKey().processName;
+                    scope.modules[j] = Collections.unmodifiableList(modules);
+                    scope.legacyModules[j] = Collections.unmodifiableList(legacyModules);
+                }
+                scopes.append(byUid.keyAt(i), scope);
+            }
+            return new ScopeIndex(scopes);
+        }
+
+        @Nullable
+        List<Module> get(String processName, int uid, boolean legacy) {
+            var scope = scopes.get(uid);
+            if (scope == null) return null;
+            for (int i = 0; i < scope.processNames.length; i++) {
+                if (scope.processNames[i].equals(processName)) {
+                    return legacy ? scope.legacyModules[i] : scope.modules[i];
+                }
+            }
+            return null;
+        }
+
+        boolean containsUid(int uid) {
+            return scopes.indexOfKey(uid) >= 0;
+        }
+    }
+
     private final SQLiteStatement createModulesTable = db.compileStatement("CREATE TABLE IF NOT EXISTS modules (" +
             "mid integer PRIMARY KEY AUTOINCREMENT," +
             "module_pkg_name text NOT NULL UNIQUE," +
@@ -171,9 +252,18 @@ public class ConfigManager {
 
     private final Map<ProcessScope, List<Module>> cachedScope = new ConcurrentHashMap<>();
 
+    // snapshot of cachedScope for lookups, replaced whenever cachedScope is complete again
+    private volatile ScopeIndex scopeIndex = ScopeIndex.EMPTY;
+
+    // <packageName, userId>, the processes and modules each scoped app adds to cachedScope
+    private final Map<Pair<String, Integer>, List<Pair<ProcessScope, Module>>> cachedAppScope = new ConcurrentHashMap<>();
+
     // packageName, Module
     private final Map<String, Module> cachedModule = new ConcurrentHashMap<>();
 
+    // appId, packageNames of cachedModule, replaced whenever cachedModule changes
+    private volatile Map<Integer, List<String>> modulePackages = Collections.emptyMap();
+
     // packageName, userId, group, key, value
     private final Map<Pair<String, Integer>, Map<String, HashMap<String, Object>>> cachedConfig = new ConcurrentHashMap<>();
 
@@ -250,7 +340,7 @@ public class ConfigManager {
             }
         }
 
-        return modules.parallelStream().filter(m -> {
+        modules = modules.parallelStream().filter(m -> {
             var file = ConfigFileManager.loadModule(m.apkPath, dexObfuscate);
             if (file == null) {
                 Log.w(TAG, "Can not load " + m.apkPath + ", skip!");
@@ -260,6 +350,8 @@ public class ConfigManager {
             cachedModule.putIfAbsent(m.packageName, m);
             return true;
         }).collect(Collectors.toList());
+        indexModulePackages();
+        return modules;
     }
 
     private synchronized void updateConfig() {
@@ -353,6 +445,7 @@ public class ConfigManager {
         HandlerThread cacheThread = new HandlerThread("cache");
         cacheThread.start();
         cacheHandler = new Handler(cacheThread.getLooper());
+        packageEvents = new PackageEventCoalescer(this, cacheHandler);
 
         initDB();
         updateConfig();
@@ -555,7 +648,18 @@ public class ConfigManager {
             lastModuleCacheTime = 0;
         }
         cachedModule.clear();
+        modulePackages = Collections.emptyMap();
         cachedScope.clear();
+        scopeIndex = ScopeIndex.EMPTY;
+    }
+
+    private synchronized void indexModulePackages() {
+        var packages = new HashMap<Integer, List<String>>();
+        for (var module : cachedModule.values()) {
+            packages.computeIfAbsent(module.appId, k -> new ArrayList<>(1)).add(module.packageName);
+        }
+        packages.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        modulePackages = packages;
     }
 
     private synchronized void cacheModules() {
@@ -645,6 +749,7 @@ public class ConfigManager {
                 m.file = file;
                 cachedModule.put(m.packageName, m);
             });
+            indexModulePackages();
 
             if (PackageService.isAlive()) {
                 obsoleteModules.forEach(this::removeModuleWithoutCache);
@@ -671,8 +776,10 @@ public class ConfigManager {
             else lastScopeCacheTime = SystemClock.elapsedRealtime();
         }
         cachedScope.clear();
+        cachedAppScope.clear();
+        // modules of a process are in the order of their mid, which updateAppCache keeps
         try (Cursor cursor = db.query("scope INNER JOIN modules ON scope.mid = modules.mid", new String[]{"app_pkg_name", "module_pkg_name", "user_id"},
-                "enabled = 1", null, null, null, null)) {
+                "enabled = 1", null, null, null, "modules.mid")) {
             int appPkgNameIdx = cursor.getColumnIndex("app_pkg_name");
             int modulePkgNameIdx = cursor.getColumnIndex("module_pkg_name");
             int userIdIdx = cursor.getColumnIndex("user_id");
@@ -681,6 +788,7 @@ public class ConfigManager {
             final var obsoleteModules = new HashSet<Application>();
             final var moduleAvailability = new HashMap<Pair<String, Integer>, Boolean>();
             final var cachedProcessScope = new HashMap<Pair<String, Integer>, List<ProcessScope>>();
+            final var modulePackageScopes = new HashMap<String, Set<String>>();
 
             final var denylist = new HashSet<>(getDenyListPackages());
             while (cursor.moveToNext()) {
@@ -706,6 +814,8 @@ public class ConfigManager {
                     return available;
                 })) continue;
 
+                modulePackageScopes.computeIfAbsent(modulePackageName, ignored -> new HashSet<>()).add(app.packageName);
+
                 // system server always loads database
                 if (app.packageName.equals("system")) continue;
 
@@ -725,20 +835,12 @@ public class ConfigManager {
                     }
                     var module = cachedModule.get(modulePackageName);
                     assert module != null;
-                    for (ProcessScope processScope : processesScope) {
-                        cachedScope.computeIfAbsent(processScope,
-                                ignored -> new LinkedList<>()).add(module);
-                        // Always allow the module to inject itself
-                        if (modulePackageName.equals(app.packageName)) {
-                            var appId = processScope.uid % PER_USER_RANGE;
-                            for (var user : UserService.getUsers()) {
-                                var moduleUid = user.id * PER_USER_RANGE + appId;
-                                if (moduleUid == processScope.uid) continue; // skip duplicate
-                                var moduleSelf = new ProcessScope(processScope.processName, moduleUid);
-                                cachedScope.computeIfAbsent(moduleSelf,
-                                        ignored -> new LinkedList<>()).add(module);
-                            }
-                        }
+                    var appScope = cachedAppScope.computeIfAbsent(new Pair<>(app.packageName, app.userId), ignored -> new ArrayList<>());
+                    for (var entry : scopeEntries(app, module, processesScope)) {
+                        // other apps may run in the same process
+                        var modules = cachedScope.computeIfAbsent(entry.first, ignored -> new LinkedList<>());
+                        if (!modules.contains(module)) modules.add(module);
+                        appScope.add(entry);
                     }
                 } catch (RemoteException e) {
                     Log.e(TAG, Log.getStackTraceString(e));
@@ -759,7 +861,15 @@ public class ConfigManager {
                 clearCache();
                 return;
             }
+            // modules with scoped callbacks only get them for the packages in their scope,
+            // updateModuleScope recomputes it for single modules
+            cachedModule.values().forEach(module -> {
+                if (module.file.scopedCallbacks) {
+                    module.scope = new ArrayList<>(modulePackageScopes.getOrDefault(module.packageName, Collections.emptySet()));
+                }
+            });
         }
+        scopeIndex = ScopeIndex.of(cachedScope);
         Log.d(TAG, "cached scope");
         cachedScope.forEach((ps, modules) -> {
             Log.d(TAG, ps.processName + "/" + ps.uid);
@@ -767,18 +877,143 @@ public class ConfigManager {
         });
     }
 
+    private List<Pair<ProcessScope, Module>> scopeEntries(Application app, Module module, List<ProcessScope> processesScope) throws RemoteException {
+        var entries = new ArrayList<Pair<ProcessScope, Module>>();
+        for (ProcessScope processScope : processesScope) {
+            entries.add(new Pair<>(processScope, module));
+            // Always allow the module to inject itself
+            if (module.packageName.equals(app.packageName)) {
+                var appId = processScope.uid % PER_USER_RANGE;
+                for (var user : UserService.getUsers()) {
+                    var moduleUid = user.id * PER_USER_RANGE + appId;
+                    if (moduleUid == processScope.uid) continue; // skip duplicate
+                    entries.add(new Pair<>(new ProcessScope(processScope.processName, moduleUid), module));
+                }
+            }
+        }
+        return entries;
+    }
+
+    // Only recomputes the processes of one app, the full rebuild is the fallback
+    public synchronized void updateAppCache(String packageName, int userId) {
+        if (lastScopeCacheTime == 0 || !PackageService.isAlive()) {
+            updateAppCache();
+            return;
+        }
+        var app = new Application();
+        app.packageName = packageName;
+        app.userId = userId;
+        var appScope = new ArrayList<Pair<ProcessScope, Module>>();
+        var scopedModules = new HashSet<Module>();
+        try (Cursor cursor = db.query("scope INNER JOIN modules ON scope.mid = modules.mid", new String[]{"module_pkg_name"},
+                "app_pkg_name = ? AND user_id = ? AND enabled = 1", new String[]{packageName, String.valueOf(userId)}, null, null, null)) {
+            List<ProcessScope> processesScope = null;
+            while (cursor.moveToNext()) {
+                var module = cachedModule.get(cursor.getString(0));
+                if (module != null && module.file.scopedCallbacks) scopedModules.add(module);
+                if (module == null || !PackageService.isPackageAvailable(module.packageName, userId, true)) {
+                    // obsolete modules are removed by the full rebuild
+                    continue;
+                }
+                if (processesScope == null) {
+                    processesScope = getAssociatedProcesses(app);
+                    if (processesScope.isEmpty()) {
+                        Log.d(TAG, "removing obsolete package: " + packageName + "/" + userId);
+                        removeAppWithoutCache(app);
+                        break;
+                    }
+                }
+                appScope.addAll(scopeEntries(app, module, processesScope));
+            }
+        } catch (Throwable e) {
+            Log.w(TAG, "update scope of " + packageName + "/" + userId, e);
+            updateAppCache();
+            return;
+        }
+        if (!PackageService.isAlive()) {
+            Log.w(TAG, "pm is dead while caching. invalidating...");
+            clearCache();
+            return;
+        }
+
+        var key = new Pair<>(packageName, userId);
+        var oldAppScope = appScope.isEmpty() ? cachedAppScope.remove(key) : cachedAppScope.put(key, appScope);
+        var affected = new HashSet<ProcessScope>();
+        if (oldAppScope != null) oldAppScope.forEach(entry -> affected.add(entry.first));
+        appScope.forEach(entry -> affected.add(entry.first));
+        var mids = getModuleMids();
+        for (var processScope : affected) {
+            // other apps may run in the same process
+            var modules = new LinkedList<Module>();
+            cachedAppScope.values().forEach(entries -> entries.forEach(entry -> {
+                if (entry.first.equals(processScope) && !modules.contains(entry.second)) {
+                    modules.add(entry.second);
+                }
+            }));
+            // same order as cacheScopes
+            modules.sort(Comparator.comparingInt(module -> mids.getOrDefault(module.packageName, Integer.MAX_VALUE)));
+            if (modules.isEmpty()) {
+                cachedScope.remove(processScope);
+            } else {
+                cachedScope.put(processScope, modules);
+            }
+        }
+        scopeIndex = ScopeIndex.of(cachedScope);
+        if (oldAppScope != null) {
+            oldAppScope.forEach(entry -> {
+                if (entry.second.file.scopedCallbacks) scopedModules.add(entry.second);
+            });
+        }
+        scopedModules.forEach(this::updateModuleScope);
+        Log.d(TAG, "cached scope of " + packageName + "/" + userId + ": " + affected.size() + " processes");
+    }
+
+    private Map<String, Integer> getModuleMids() {
+        var mids = new HashMap<String, Integer>();
+        try (Cursor cursor = db.query("modules", new String[]{"module_pkg_name", "mid"}, null, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                mids.put(cursor.getString(0), cursor.getInt(1));
+            }
+        }
+        return mids;
+    }
+
+    // Module.scope of a single module, as computed by cacheScopes
+    private void updateModuleScope(Module module) {
+        var scope = new HashSet<String>();
+        var availability = new HashMap<Integer, Boolean>();
+        try (Cursor cursor = db.query("scope INNER JOIN modules ON scope.mid = modules.mid", new String[]{"app_pkg_name", "user_id"},
+                "module_pkg_name = ? AND enabled = 1", new String[]{module.packageName}, null, null, null)) {
+            while (cursor.moveToNext()) {
+                var userId = cursor.getInt(1);
+                var available = availability.get(userId);
+                if (available == null) {
+                    available = PackageService.isPackageAvailable(module.packageName, userId, true);
+                    availability.put(userId, available);
+                }
+                if (available) scope.add(cursor.getString(0));
+            }
+        } catch (RemoteException e) {
+            Log.w(TAG, "update scope of module " + module.packageName, e);
+            return;
+        }
+        module.scope = new ArrayList<>(scope);
+    }
+
     // This is called when a new process created, use the cached result
-    public List<Module> getModulesForProcess(String processName, int uid) {
-        return isManager(uid) ? Collections.emptyList() : cachedScope.getOrDefault(new ProcessScope(processName, uid), Collections.emptyList());
+    public List<Module> getModulesForProcess(String processName, int uid, boolean legacy) {
+        if (isManager(uid)) return Collections.emptyList();
+        var modules = scopeIndex.get(processName, uid, legacy);
+        return modules != null ? modules : Collections.emptyList();
     }
 
     // This is called when a new process created, use the cached result
-    public boolean shouldSkipProcess(ProcessScope scope) {
-        return !cachedScope.containsKey(scope) && !isManager(scope.uid);
+    public boolean shouldSkipProcess(String processName, int uid) {
+        return scopeIndex.get(processName, uid, false) == null && !isManager(uid);
     }
 
     public boolean isUidHooked(int uid) {
-        return cachedScope.keySet().stream().reduce(false, (p, scope) -> p || scope.uid == uid, Boolean::logicalOr);
+        return scopeIndex.containsUid(uid);
     }
 
     @Nullable
@@ -1003,6 +1238,11 @@ public class ConfigManager {
         }
     }
 
+    // cache updates of package events, applied in batches
+    public PackageEventCoalescer packageEvents() {
+        return packageEvents;
+    }
+
     public void updateCache() {
         // Called by oneway binder
         updateCaches(true);
@@ -1145,9 +1385,13 @@ public class ConfigManager {
         return managerUid != -1;
     }
 
-    public String getPrefsPath(String packageName, int uid) {
+    public String getPrefsDir(int uid) {
         int userId = uid / PER_USER_RANGE;
-        var path = miscPath.resolve("prefs" + (userId == 0 ? "" : String.valueOf(userId))).resolve(packageName);
+        return miscPath.resolve("prefs" + (userId == 0 ? "" : String.valueOf(userId))).toString();
+    }
+
+    public String getPrefsPath(String packageName, int uid) {
+        var path = Paths.get(getPrefsDir(uid)).resolve(packageName);
         var module = cachedModule.getOrDefault(packageName, null);
         if (module != null && module.appId == uid % PER_USER_RANGE) {
             try {
@@ -1180,6 +1424,11 @@ public class ConfigManager {
         return module != null && module.appId == uid % PER_USER_RANGE;
     }
 
+    // the packages isModule is true for with this uid
+    public List<String> getModulePackagesForUid(int uid) {
+        return modulePackages.getOrDefault(uid % PER_USER_RANGE, Collections.emptyList());
+    }
+
     private void walkFileTree(Path rootDir, Consumer<Path> action) throws IOException {
         if (Files.notExists(rootDir)) return;
         Files.walkFileTree(rootDir, new SimpleFileVisitor<>() {
@@ -0,0 +1,158 @@
+/*
+ * This file is part of LSPosed.
+ *
+ * LSPosed is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSPosed is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSPosed.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2024 LSPosed Contributors
+ */
+
+package org.lsposed.lspd.service;
+
+import static org.lsposed.lspd.service.ServiceManager.TAG;
+
+import android.os.SharedMemory;
+import android.system.ErrnoException;
+import android.system.OsConstants;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.zip.ZipEntry;
+
+/**
+ * Unobfuscated module dexes as loaded into {@link SharedMemory}, kept on disk by content.
+ * <p>
+ * Files are named by a digest of the APK path, size and modification time, the dex entry and its
+ * CRC, so a changed APK never matches an old file. Obfuscated dexes are not cached, as their
+ * signatures are generated anew at every daemon start. The least recently used files are removed
+ * once the cache grows beyond {@link #MAX_SIZE}.
+ */
+final class DexCache {
+    static final long MAX_SIZE = 64L << 20;
+
+    private static final Path cachePath = ConfigFileManager.basePath.resolve("cache").resolve("dex");
+
+    private DexCache() {
+    }
+
+    static String key(File apk, ZipEntry dex) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            var key = new StringBuilder()
+                    .append(apk.getAbsolutePath()).append('\0')
+                    .append(apk.length()).append('\0')
+                    .append(apk.lastModified()).append('\0')
+                    .append(dex.getName()).append('\0')
+                    .append(dex.getCrc()).append('\0')
+                    .append(dex.getSize());
+            var hash = digest.digest(key.toString().getBytes(StandardCharsets.UTF_8));
+            var name = new StringBuilder(hash.length * 2);
+            for (var b : hash) {
+                name.append(String.format("%02x", b));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * The cached dex as read only shared memory, or null if there is none.
+     */
+    @Nullable
+    static SharedMemory get(String key) {
+        var path = cachePath.resolve(key);
+        if (!Files.isRegularFile(path)) return null;
+        SharedMemory memory = null;
+        try (var channel = Files.newByteChannel(path, StandardOpenOption.READ)) {
+            memory = SharedMemory.create(null, (int) channel.size());
+            var byteBuffer = memory.mapReadWrite();
+            try {
+                while (byteBuffer.hasRemaining()) {
+                    if (channel.read(byteBuffer) < 0) throw new IOException("truncated");
+                }
+            } finally {
+                SharedMemory.unmap(byteBuffer);
+            }
+            memory.setProtect(OsConstants.PROT_READ);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return memory;
+        } catch (IOException | ErrnoException e) {
+            Log.w(TAG, "Can not read cached dex " + path, e);
+            if (memory != null) memory.close();
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+            }
+            return null;
+        }
+    }
+
+    static void put(String key, SharedMemory memory) {
+        Path tmp = null;
+        try {
+            Files.createDirectories(cachePath);
+            tmp = Files.createTempFile(cachePath, key, ".tmp");
+            var byteBuffer = memory.mapReadOnly();
+            try (var channel = Files.newByteChannel(tmp, StandardOpenOption.WRITE)) {
+                while (byteBuffer.hasRemaining()) channel.write(byteBuffer);
+            } finally {
+                SharedMemory.unmap(byteBuffer);
+            }
+            Files.move(tmp, cachePath.resolve(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            tmp = null;
+        } catch (IOException | ErrnoException e) {
+            Log.w(TAG, "Can not cache dex " + key, e);
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        evict();
+    }
+
+    private static synchronized void evict() {
+        var files = new ArrayList<File>();
+        long size = 0;
+        var list = cachePath.toFile().listFiles();
+        if (list == null) return;
+        for (var file : list) {
+            if (file.getName().endsWith(".tmp")) continue;
+            files.add(file);
+            size += file.length();
+        }
+        if (size <= MAX_SIZE) return;
+        files.sort(Comparator.comparingLong(File::lastModified));
+        for (var file : files) {
+            if (size <= MAX_SIZE) break;
+            var length = file.length();
+            if (file.delete()) size -= length;
+        }
+    }
+}
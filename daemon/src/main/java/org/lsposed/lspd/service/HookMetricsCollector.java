@@ -0,0 +1,149 @@
+package org.lsposed.lspd.service;
+
+import static org.lsposed.lspd.service.ServiceManager.TAG;
+
+import android.os.RemoteException;
+import android.util.Log;
+
+import org.lsposed.lspd.IHookMetricsReceiver;
+import org.lsposed.lspd.models.HookMetric;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Switches the hook metrics of all injected processes and merges their snapshots.
+ * <p>
+ * The switch is kept in memory only, so that metrics are off again after a reboot. Processes
+ * that register later get the current state as the reply of
+ * {@link LSPApplicationService#registerHookMetrics}.
+ * <p>
+ * Snapshots are requested with oneway calls and arrive through an {@link IHookMetricsReceiver},
+ * so a stuck process can not block the caller. Processes that did not answer within
+ * {@link #COLLECT_TIMEOUT_MILLIS} are left out of the result.
+ */
+public class HookMetricsCollector {
+    static final long COLLECT_TIMEOUT_MILLIS = 1000;
+
+    private static volatile boolean enabled = false;
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static synchronized void setEnabled(boolean enabled) {
+        HookMetricsCollector.enabled = enabled;
+        for (var process : LSPApplicationService.getProcesses()) {
+            var callback = process.hookMetrics;
+            if (callback == null) continue;
+            try {
+                callback.setEnabled(enabled);
+            } catch (RemoteException e) {
+                Log.w(TAG, "set hook metrics of " + process, e);
+            }
+        }
+    }
+
+    /**
+     * Snapshots of all processes that answered in time, merged by method, hooker, module and
+     * phase, and the counters of the daemon itself.
+     */
+    public static List<HookMetric> collect() {
+        Map<Key, HookMetric> merged = new HashMap<>();
+        for (var metric : ConfigManager.getInstance().packageEvents().metrics()) {
+            merged.put(new Key(metric), metric);
+        }
+        var processes = new ArrayList<>(LSPApplicationService.getProcesses());
+        var replies = new ConcurrentLinkedQueue<List<HookMetric>>();
+        var pending = new CountDownLatch(processes.size());
+        var receiver = new IHookMetricsReceiver.Stub() {
+            @Override
+            public void onMetrics(List<HookMetric> metrics) {
+                if (metrics != null) replies.add(metrics);
+                pending.countDown();
+            }
+        };
+        for (var process : processes) {
+            var callback = process.hookMetrics;
+            if (callback == null) {
+                pending.countDown();
+                continue;
+            }
+            try {
+                callback.collect(receiver);
+            } catch (RemoteException e) {
+                Log.w(TAG, "collect hook metrics of " + process, e);
+                pending.countDown();
+            }
+        }
+        try {
+            if (!pending.await(COLLECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, pending.getCount() + " processes did not report hook metrics in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // replies arriving from now on are not merged
+        List<HookMetric> metrics;
+        while ((metrics = replies.poll()) != null) {
+            for (var metric : metrics) {
+                var existing = merged.putIfAbsent(new Key(metric), metric);
+                if (existing != null) {
+                    merge(existing, metric);
+                }
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    private static void merge(HookMetric into, HookMetric from) {
+        into.processes += from.processes;
+        into.count += from.count;
+        into.totalNanos += from.totalNanos;
+        if (from.buckets == null) return;
+        if (into.buckets == null || into.buckets.length < from.buckets.length) {
+            var buckets = new long[from.buckets.length];
+            if (into.buckets != null) {
+                System.arraycopy(into.buckets, 0, buckets, 0, into.buckets.length);
+            }
+            into.buckets = buckets;
+        }
+        for (int i = 0; i < from.buckets.length; i++) {
+            into.buckets[i] += from.buckets[i];
+        }
+    }
+
+    private static final class Key {
+        final String method;
+        final String hooker;
+        final String module;
+        final int phase;
+
+        Key(HookMetric metric) {
+            this.method = metric.method;
+            this.hooker = metric.hooker;
+            this.module = metric.module;
+            this.phase = metric.phase;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            var key = (Key) o;
+            return phase == key.phase && Objects.equals(method, key.method) && Objects.equals(hooker, key.hooker)
+                    && Objects.equals(module, key.module);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(method, hooker, module, phase);
+        }
+    }
+}
@@ -31,8 +31,11 @@ import android.util.Pair;
 
 import androidx.annotation.NonNull;
 
+import org.lsposed.lspd.IHookMetricsCallback;
+import org.lsposed.lspd.models.InjectionBundle;
 import org.lsposed.lspd.models.Module;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +53,7 @@ public class LSPApplicationService extends ILSPApplicationService.Stub {
         final int pid;
         final String processName;
         final IBinder heartBeat;
+        volatile IHookMetricsCallback hookMetrics;
 
         ProcessInfo(int uid, int pid, String processName, IBinder heartBeat) throws RemoteException {
             this.uid = uid;
@@ -116,24 +120,35 @@ public class LSPApplicationService extends ILSPApplicationService.Stub {
         }
     }
 
-    private List<Module> getAllModulesList() throws RemoteException {
-        var processInfo = ensureRegistered();
+    private List<Module> getModulesList(ProcessInfo processInfo, boolean legacy) {
         if (processInfo.uid == Process.SYSTEM_UID && processInfo.processName.equals("system")) {
-            return ConfigManager.getInstance().getModulesForSystemServer();
+            return ConfigManager.getInstance().getModulesForSystemServer().stream().filter(m -> m.file.legacy == legacy).collect(Collectors.toList());
         }
         if (ServiceManager.getManagerService().isRunningManager(processInfo.pid, processInfo.uid))
             return Collections.emptyList();
-        return ConfigManager.getInstance().getModulesForProcess(processInfo.processName, processInfo.uid);
+        // split by the scope cache already
+        return ConfigManager.getInstance().getModulesForProcess(processInfo.processName, processInfo.uid, legacy);
     }
 
     @Override
     public List<Module> getLegacyModulesList() throws RemoteException {
-        return getAllModulesList().stream().filter(m -> m.file.legacy).collect(Collectors.toList());
+        return getModulesList(ensureRegistered(), true);
     }
 
     @Override
     public List<Module> getModulesList() throws RemoteException {
-        return getAllModulesList().stream().filter(m -> !m.file.legacy).collect(Collectors.toList());
+        return getModulesList(ensureRegistered(), false);
+    }
+
+    @Override
+    public InjectionBundle getInjectionBundle() throws RemoteException {
+        var processInfo = ensureRegistered();
+        var bundle = new InjectionBundle();
+        bundle.modules = getModulesList(processInfo, false);
+        bundle.legacyModules = getModulesList(processInfo, true);
+        bundle.modulePackages = ConfigManager.getInstance().getModulePackagesForUid(processInfo.uid);
+        bundle.prefsDir = ConfigManager.getInstance().getPrefsDir(processInfo.uid);
+        return bundle;
     }
 
     @Override
@@ -175,6 +190,17 @@ public class LSPApplicationService extends ILSPApplicationService.Stub {
         }
     }
 
+    @Override
+    public boolean registerHookMetrics(IBinder callback) throws RemoteException {
+        var processInfo = ensureRegistered();
+        processInfo.hookMetrics = IHookMetricsCallback.Stub.asInterface(callback);
+        return HookMetricsCollector.isEnabled();
+    }
+
+    static Collection<ProcessInfo> getProcesses() {
+        return processes.values();
+    }
+
     public boolean hasRegister(int uid, int pid) {
         return processes.containsKey(new Pair<>(uid, pid));
     }
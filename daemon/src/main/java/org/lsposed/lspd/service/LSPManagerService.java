@@ -51,6 +51,7 @@ import androidx.annotation.NonNull;
 import org.lsposed.daemon.BuildConfig;
 import org.lsposed.lspd.ILSPManagerService;
 import org.lsposed.lspd.models.Application;
+import org.lsposed.lspd.models.HookMetric;
 import org.lsposed.lspd.models.UserInfo;
 import org.lsposed.lspd.util.Utils;
 
@@ -681,4 +682,19 @@ public class LSPManagerService extends ILSPManagerService.Stub {
     public boolean isLogWatchdogEnabled() {
         return ConfigManager.getInstance().isLogWatchdogEnabled();
     }
+
+    @Override
+    public boolean isHookMetricsEnabled() {
+        return HookMetricsCollector.isEnabled();
+    }
+
+    @Override
+    public void setHookMetricsEnabled(boolean enabled) {
+        HookMetricsCollector.setEnabled(enabled);
+    }
+
+    @Override
+    public List<HookMetric> getHookMetrics() {
+        return HookMetricsCollector.collect();
+    }
 }
@@ -101,7 +101,7 @@ public class LSPosedService extends ILSPosedService.Stub {
             return ServiceManager.requestApplicationService(uid, pid, processName, heartBeat);
         }
 
-        if (!ServiceManager.getManagerService().shouldStartManager(pid, uid, processName) && ConfigManager.getInstance().shouldSkipProcess(new ConfigManager.ProcessScope(processName, uid))) {
+        if (!ServiceManager.getManagerService().shouldStartManager(pid, uid, processName) && ConfigManager.getInstance().shouldSkipProcess(processName, uid)) {
             Log.d(TAG, "Skipped " + processName + "/" + uid);
             return null;
         }
@@ -178,7 +178,8 @@ public class LSPosedService extends ILSPosedService.Stub {
                 } else {
                     if (configManager.isUidHooked(uid)) {
                         // it will automatically remove obsolete app from database
-                        configManager.updateAppCache();
+                        if (moduleName != null) configManager.packageEvents().updateAppCache(moduleName, userId);
+                        else configManager.packageEvents().updateAppCache();
                     }
                     if (intentAction.equals(Intent.ACTION_PACKAGE_ADDED) && !intent.getBooleanExtra(Intent.EXTRA_REPLACING, false)) {
                         for (String moduleAdd : configManager.getAutomaticAddModules()) {
@@ -208,10 +209,11 @@ public class LSPosedService extends ILSPosedService.Stub {
                 broadcastAndShowNotification(moduleName, userId, intent, isXposedModule);
                 if (isXposedModule) {
                     // it will auto remove obsolete app and scope from database
-                    ConfigManager.getInstance().updateCache();
+                    ConfigManager.getInstance().packageEvents().updateCache();
                 } else if (ConfigManager.getInstance().isUidHooked(uid)) {
                     // it will auto remove obsolete scope from database
-                    ConfigManager.getInstance().updateAppCache();
+                    if (moduleName != null) ConfigManager.getInstance().packageEvents().updateAppCache(moduleName, userId);
+                    else ConfigManager.getInstance().packageEvents().updateAppCache();
                 }
             }
         }
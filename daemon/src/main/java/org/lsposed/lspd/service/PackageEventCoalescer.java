@@ -0,0 +1,127 @@
+package org.lsposed.lspd.service;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Pair;
+
+import org.lsposed.lspd.models.HookMetric;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the cache updates package events ask for and applies them in one batch.
+ * <p>
+ * Bulk installs and restores send hundreds of package broadcasts back to back, and each of them
+ * used to rebuild the caches of {@link ConfigManager}. Requests are applied once no event came in
+ * for {@link #QUIET_MILLIS}, or {@link #MAX_DELAY_MILLIS} after the first one at the latest. A full
+ * update covers all app updates of the batch, and too many app updates become one scope rebuild.
+ * The updates go through the usual entry points, which keep the cache times up to date.
+ */
+public class PackageEventCoalescer {
+    static final long QUIET_MILLIS = 500;
+    static final long MAX_DELAY_MILLIS = 5000;
+    // above this, one scope rebuild is cheaper than updating every app
+    static final int MAX_APP_UPDATES = 32;
+
+    private static final String METRIC_METHOD = PackageEventCoalescer.class.getName();
+
+    private final ConfigManager configManager;
+    private final Handler handler;
+    private final Runnable flush = this::flush;
+
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+
+    // pending requests, guarded by this
+    private boolean fullUpdate = false;
+    private boolean scopeUpdate = false;
+    private final LinkedHashSet<Pair<String, Integer>> appUpdates = new LinkedHashSet<>();
+    private long firstEventTime = 0;
+
+    PackageEventCoalescer(ConfigManager configManager, Handler handler) {
+        this.configManager = configManager;
+        this.handler = handler;
+    }
+
+    /** See {@link ConfigManager#updateCache()}. */
+    public void updateCache() {
+        synchronized (this) {
+            fullUpdate = true;
+            schedule();
+        }
+    }
+
+    /** See {@link ConfigManager#updateAppCache()}. */
+    public void updateAppCache() {
+        synchronized (this) {
+            scopeUpdate = true;
+            schedule();
+        }
+    }
+
+    /** See {@link ConfigManager#updateAppCache(String, int)}. */
+    public void updateAppCache(String packageName, int userId) {
+        synchronized (this) {
+            appUpdates.add(new Pair<>(packageName, userId));
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        events.incrementAndGet();
+        var now = SystemClock.elapsedRealtime();
+        if (firstEventTime == 0) firstEventTime = now;
+        var delay = Math.min(QUIET_MILLIS, firstEventTime + MAX_DELAY_MILLIS - now);
+        handler.removeCallbacks(flush);
+        handler.postDelayed(flush, Math.max(delay, 0));
+    }
+
+    private void flush() {
+        boolean fullUpdate;
+        boolean scopeUpdate;
+        List<Pair<String, Integer>> appUpdates;
+        synchronized (this) {
+            fullUpdate = this.fullUpdate;
+            scopeUpdate = this.scopeUpdate || this.appUpdates.size() > MAX_APP_UPDATES;
+            appUpdates = new ArrayList<>(this.appUpdates);
+            this.fullUpdate = false;
+            this.scopeUpdate = false;
+            this.appUpdates.clear();
+            firstEventTime = 0;
+        }
+        if (fullUpdate) {
+            configManager.updateCache();
+            rebuilds.incrementAndGet();
+        } else if (scopeUpdate) {
+            configManager.updateAppCache();
+            rebuilds.incrementAndGet();
+        } else {
+            for (var app : appUpdates) {
+                configManager.updateAppCache(app.first, app.second);
+                rebuilds.incrementAndGet();
+            }
+        }
+    }
+
+    /** Events received and cache updates performed, as counters for the hook metrics. */
+    List<HookMetric> metrics() {
+        var metrics = new ArrayList<HookMetric>(2);
+        metrics.add(counter("package events", events.get()));
+        metrics.add(counter("cache updates", rebuilds.get()));
+        return metrics;
+    }
+
+    private static HookMetric counter(String name, long count) {
+        var metric = new HookMetric();
+        metric.method = METRIC_METHOD;
+        metric.hooker = name;
+        metric.phase = HookMetric.PHASE_COUNTER;
+        metric.processes = 1;
+        metric.count = count;
+        metric.buckets = new long[0];
+        return metric;
+    }
+}
@@ -27,6 +27,7 @@ dependencyResolutionManagement {
 rootProject.name = "LSPosed"
 include(
     ":app",
+    ":benchmark",
     ":core",
     ":daemon",
     ":dex2oat",